@@ -0,0 +1,37 @@
+package plc.project;
+
+/**
+ * Builds synthetic sources for the benchmarks. Each block declares a few
+ * globals and a function returning one of them, using only constructs which
+ * make it through every stage of the pipeline.
+ */
+final class Corpus {
+
+    /**
+     * The number of tokens produced by {@link #block(StringBuilder, int)}.
+     */
+    private static final int BLOCK_TOKENS = 48;
+
+    private Corpus() {}
+
+    /**
+     * Returns a source of at least the given number of tokens.
+     */
+    static String source(int tokens) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i * BLOCK_TOKENS < tokens; i++) {
+            block(builder, i);
+        }
+        return builder.toString();
+    }
+
+    private static void block(StringBuilder builder, int i) {
+        builder.append("VAR a").append(i).append(": Integer = ").append(i).append(";\n");
+        builder.append("VAR v").append(i).append(": Integer = a").append(i).append(" + a").append(i).append(" + 2;\n");
+        builder.append("VAL d").append(i).append(": Decimal = ").append(i).append(".5;\n");
+        builder.append("VAL s").append(i).append(": String = \"string number ").append(i).append("\\n\";\n");
+        builder.append("FUN f").append(i).append("(): Integer DO\n    print(v").append(i)
+                .append(");\n    RETURN v").append(i).append(";\nEND\n");
+    }
+
+}
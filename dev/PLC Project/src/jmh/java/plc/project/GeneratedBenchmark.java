@@ -0,0 +1,72 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stages after the parser over programs built directly as
+ * trees by a {@link ProgramGenerator}, so that they can be measured on
+ * constructs the parser does not (yet) accept. Interpreting a program runs
+ * its generated main, which calls every function, and what it prints is
+ * discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeneratedBenchmark {
+
+    @Param({"100", "10000"})
+    public int globals;
+
+    @Param({"2", "6"})
+    public int depth;
+
+    private Ast.Source ast;
+    private PrintStream out;
+
+    @Setup
+    public void setup() {
+        ast = new ProgramGenerator(0).setGlobals(globals).setFunctions(globals / 4).setDepth(depth)
+                .setOperators("&&", "||", "<", ">", "==", "+", "-", "*", "/", "^")
+                .generate();
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public Environment.PlcObject interpret() {
+        return new Interpreter(new plc.project.Scope(null)).visit(ast);
+    }
+
+    @Benchmark
+    public String print() {
+        StringWriter writer = new StringWriter();
+        new SourcePrinter(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
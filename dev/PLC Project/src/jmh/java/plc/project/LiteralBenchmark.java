@@ -0,0 +1,43 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding a single string literal of the given length, one in
+ * eight characters of which is an escape, as lexed into a token buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LiteralBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int length;
+
+    private List<Token> lexed;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < length; i++) {
+            builder.append(i % 8 == 7 ? "\\n" : "x");
+        }
+        lexed = new Lexer(builder.append('"').toString()).lex();
+    }
+
+    @Benchmark
+    public Ast.Expression parse() {
+        return new Parser(lexed).parsePrimaryExpression();
+    }
+
+}
@@ -0,0 +1,97 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks calling a function made of nested {@code WHILE} loops with each
+ * execution mode, so that the time is spent running statements rather than
+ * preparing them. The bytecode mode calls the generated method reflectively.
+ *
+ * The interpreter defines a function's parameters in the calling scope, so it
+ * cannot call the function twice from the same scope and is given a fresh
+ * scope for each call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoopBenchmark {
+
+    private static final String SOURCE = "FUN loop(n: Integer): Integer DO\n"
+            + "    LET sum: Integer = 0;\n"
+            + "    LET i: Integer = 0;\n"
+            + "    WHILE i < n DO\n"
+            + "        LET j: Integer = 0;\n"
+            + "        WHILE j < 10 DO\n"
+            + "            sum = sum + j * 2;\n"
+            + "            j = j + 1;\n"
+            + "        END\n"
+            + "        i = i + 1;\n"
+            + "    END\n"
+            + "    RETURN sum;\n"
+            + "END";
+
+    @Param({"1000"})
+    public int iterations;
+
+    private Ast.Source ast;
+    private List<Environment.PlcObject> arguments;
+    private Environment.Function compiled;
+    private Environment.Function machine;
+    private Object instance;
+    private Method method;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(SOURCE).lex()).parseSource();
+        arguments = Arrays.asList(Environment.create(BigInteger.valueOf(iterations)));
+        ClosureCompiler compiler = new ClosureCompiler(new plc.project.Scope(null));
+        compiler.execute(ast);
+        compiled = compiler.getScope().lookupFunction("loop", 1);
+        VirtualMachine vm = new VirtualMachine(new plc.project.Scope(null));
+        vm.execute(ast);
+        machine = vm.getScope().lookupFunction("loop", 1);
+        try {
+            Class<?> type = new BytecodeGenerator("Loop").load(ast);
+            instance = type.getConstructor().newInstance();
+            method = type.getMethod("loop", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public Object interpret() {
+        Interpreter interpreter = new Interpreter(new plc.project.Scope(null));
+        interpreter.visit(ast);
+        return interpreter.getScope().lookupFunction("loop", 1).invoke(arguments).getValue();
+    }
+
+    @Benchmark
+    public Object closures() {
+        return compiled.invoke(arguments).getValue();
+    }
+
+    @Benchmark
+    public Object vm() {
+        return machine.invoke(arguments).getValue();
+    }
+
+    @Benchmark
+    public Object bytecode() throws ReflectiveOperationException {
+        return method.invoke(instance, iterations);
+    }
+
+}
@@ -0,0 +1,118 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage of the pipeline over a {@link Corpus} of the given
+ * number of tokens. Every stage is given the output of the previous stages,
+ * prepared once per trial, so only the stage itself is measured.
+ *
+ * Run with {@code ./gradlew jmh}; the gc profiler is enabled in the build to
+ * report the allocation rate alongside throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PipelineBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int tokens;
+
+    private String source;
+    private List<Token> lexed;
+    private Ast.Source parsed;
+    private Ast.Source analyzed;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        source = Corpus.source(tokens);
+        lexed = new Lexer(source).lex();
+        parsed = new Parser(lexed).parseSource();
+        analyzed = new Parser(lexed).parseSource();
+        new Analyzer(new plc.project.Scope(null)).visit(analyzed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(parsed, out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public Ast.Source parse() {
+        return new Parser(lexed).parseSource();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(parsed, out);
+        return out;
+    }
+
+    /**
+     * Loads the encoded tree, to be compared against lexing and parsing the
+     * source again.
+     */
+    @Benchmark
+    public Ast.Source decode() throws IOException {
+        return AstCodec.read(encoded);
+    }
+
+    @Benchmark
+    public plc.project.Scope analyze() {
+        Analyzer analyzer = new Analyzer(new plc.project.Scope(null));
+        analyzer.visit(parsed);
+        return analyzer.getScope();
+    }
+
+    @Benchmark
+    public Environment.PlcObject interpret() {
+        return new Interpreter(new plc.project.Scope(null)).visit(analyzed);
+    }
+
+    @Benchmark
+    public void generate() {
+        PrintWriter writer = new PrintWriter(new NullWriter());
+        new Generator(writer).visit(analyzed);
+        writer.flush();
+    }
+
+    /**
+     * Discards everything written to it, so that generating code measures the
+     * generator rather than growing a buffer.
+     */
+    private static final class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {}
+
+        @Override
+        public void write(String string, int offset, int length) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+
+    }
+
+}
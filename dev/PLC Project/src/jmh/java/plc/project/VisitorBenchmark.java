@@ -0,0 +1,319 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks walking every node of a generated tree through
+ * {@link Ast.Visitor#visit(Ast)}, which dispatches with {@link Ast#accept},
+ * against the same walk dispatching with a chain of instanceof checks, and
+ * against walking the same tree laid out in an {@link AstArena}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VisitorBenchmark {
+
+    @Param({"2", "8"})
+    public int depth;
+
+    private Ast.Source ast;
+    private AstArena arena;
+
+    @Setup
+    public void setup() {
+        ast = new ProgramGenerator(0).setGlobals(1000).setFunctions(250).setDepth(depth).setNesting(depth / 2)
+                .setOperators("&&", "||", "<", ">", "==", "+", "-", "*", "/", "^")
+                .generate();
+        arena = AstArena.of(ast);
+    }
+
+    @Benchmark
+    public int accept() {
+        return new Counter().visit(ast);
+    }
+
+    @Benchmark
+    public int arena() {
+        return arena.accept(arena.getRoot(), new ArenaCounter(arena));
+    }
+
+    @Benchmark
+    public int instanceOf() {
+        return new Counter() {
+
+            @Override
+            public Integer visit(Ast ast) {
+                if (ast instanceof Ast.Source) {
+                    return visit((Ast.Source) ast);
+                } else if (ast instanceof Ast.Global) {
+                    return visit((Ast.Global) ast);
+                } else if (ast instanceof Ast.Function) {
+                    return visit((Ast.Function) ast);
+                } else if (ast instanceof Ast.Statement.Expression) {
+                    return visit((Ast.Statement.Expression) ast);
+                } else if (ast instanceof Ast.Statement.Declaration) {
+                    return visit((Ast.Statement.Declaration) ast);
+                } else if (ast instanceof Ast.Statement.Assignment) {
+                    return visit((Ast.Statement.Assignment) ast);
+                } else if (ast instanceof Ast.Statement.If) {
+                    return visit((Ast.Statement.If) ast);
+                } else if (ast instanceof Ast.Statement.Switch) {
+                    return visit((Ast.Statement.Switch) ast);
+                } else if (ast instanceof Ast.Statement.Case) {
+                    return visit((Ast.Statement.Case) ast);
+                } else if (ast instanceof Ast.Statement.While) {
+                    return visit((Ast.Statement.While) ast);
+                } else if (ast instanceof Ast.Statement.Return) {
+                    return visit((Ast.Statement.Return) ast);
+                } else if (ast instanceof Ast.Statement.Error) {
+                    return visit((Ast.Statement.Error) ast);
+                } else if (ast instanceof Ast.Expression.Literal) {
+                    return visit((Ast.Expression.Literal) ast);
+                } else if (ast instanceof Ast.Expression.Group) {
+                    return visit((Ast.Expression.Group) ast);
+                } else if (ast instanceof Ast.Expression.Binary) {
+                    return visit((Ast.Expression.Binary) ast);
+                } else if (ast instanceof Ast.Expression.Access) {
+                    return visit((Ast.Expression.Access) ast);
+                } else if (ast instanceof Ast.Expression.Function) {
+                    return visit((Ast.Expression.Function) ast);
+                } else {
+                    return visit((Ast.Expression.PlcList) ast);
+                }
+            }
+
+        }.visit(ast);
+    }
+
+    /**
+     * Counts the nodes in a tree, visiting every child through
+     * {@link #visit(Ast)} so that each node is dispatched dynamically.
+     */
+    private static class Counter implements Ast.Visitor<Integer> {
+
+        private int count(List<? extends Ast> asts) {
+            int count = 0;
+            for (Ast ast : asts) {
+                count += visit(ast);
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1 + count(ast.getGlobals()) + count(ast.getFunctions());
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            return 1 + (ast.getValue().isPresent() ? visit(ast.getValue().get()) : 0);
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            return 1 + count(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 1 + visit((Ast) ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 1 + (ast.getValue().isPresent() ? visit(ast.getValue().get()) : 0);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 1 + visit((Ast) ast.getReceiver()) + visit((Ast) ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 1 + visit((Ast) ast.getCondition()) + count(ast.getThenStatements()) + count(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            return 1 + visit((Ast) ast.getCondition()) + count(ast.getCases());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            return 1 + (ast.getValue().isPresent() ? visit(ast.getValue().get()) : 0) + count(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 1 + visit((Ast) ast.getCondition()) + count(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 1 + visit((Ast) ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Error ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 1 + visit((Ast) ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 1 + visit((Ast) ast.getLeft()) + visit((Ast) ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 1 + (ast.getOffset().isPresent() ? visit(ast.getOffset().get()) : 0);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 1 + count(ast.getArguments());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return 1 + count(ast.getValues());
+        }
+
+    }
+
+    /**
+     * Counts the nodes in an arena as {@link Counter} does, visiting every
+     * child through {@link AstArena#accept(int, AstArena.Visitor)}.
+     */
+    private static final class ArenaCounter implements AstArena.Visitor<Integer> {
+
+        private final AstArena arena;
+
+        private ArenaCounter(AstArena arena) {
+            this.arena = arena;
+        }
+
+        private int count(int node) {
+            int count = 1;
+            for (int i = 0; i < arena.getChildCount(node); i++) {
+                int child = arena.getChild(node, i);
+                if (child != AstArena.NONE) {
+                    count += arena.accept(child, this);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visitSource(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitGlobal(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitFunction(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitExpression(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitDeclaration(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitAssignment(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitIf(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitSwitch(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitCase(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitWhile(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitReturn(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitError(int node) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitLiteral(int node) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitGroup(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitBinary(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitAccess(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitCall(int node) {
+            return count(node);
+        }
+
+        @Override
+        public Integer visitList(int node) {
+            return count(node);
+        }
+
+    }
+
+}
@@ -255,6 +255,11 @@ public final class Analyzer implements Ast.Visitor<Void> {
         //throw new UnsupportedOperationException();  // TODO
     }
 
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        throw new RuntimeException("Cannot analyze a syntax error: " + ast.getMessage() + ".");
+    }
+
     @Override
     public Void visit(Ast.Expression.Literal ast) {
 
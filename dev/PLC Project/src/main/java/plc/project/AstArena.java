@@ -0,0 +1,508 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A compact AST which stores every node as a kind, a data slot, and a run of
+ * child links in parallel primitive arrays, in the same way as a
+ * {@link TokenBuffer} stores tokens. Nodes are identified by their index and
+ * children are always stored before their parents, so walking the arrays in
+ * order visits the tree bottom up with no pointer chasing.
+ *
+ * Names, literals, and other values live in a shared pool which the data
+ * slot indexes, as described for each {@link Kind}. An optional child which
+ * is absent is linked as {@link #NONE}. Semantic information set by the
+ * {@link Analyzer}, such as variables and types, is not kept.
+ */
+public final class AstArena {
+
+    /**
+     * The id of an absent node.
+     */
+    public static final int NONE = -1;
+
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * The kinds of nodes, with the layout of their data and children.
+     */
+    public enum Kind {
+        /** Data is the number of globals; children are the globals then the functions. */
+        SOURCE,
+        /** Data is the pool index of the name, type name, and mutability; the child is the value or NONE. */
+        GLOBAL,
+        /** Data is the pool index of the name, parameters, parameter type names, and return type name; children are the statements. */
+        FUNCTION,
+        /** The child is the expression. */
+        EXPRESSION,
+        /** Data is the pool index of the name and type name; the child is the value or NONE. */
+        DECLARATION,
+        /** Children are the receiver and the value. */
+        ASSIGNMENT,
+        /** Data is the number of then statements; children are the condition, the then statements, and the else statements. */
+        IF,
+        /** Children are the condition and the cases. */
+        SWITCH,
+        /** Children are the value or NONE for a default case, and the statements. */
+        CASE,
+        /** Children are the condition and the statements. */
+        WHILE,
+        /** The child is the value. */
+        RETURN,
+        /** Data is the pool index of the message and the index of the error. */
+        ERROR,
+        /** Data is the pool index of the literal. */
+        LITERAL,
+        /** The child is the expression. */
+        GROUP,
+        /** Data is the pool index of the operator; children are the left and right operands. */
+        BINARY,
+        /** Data is the pool index of the name; the child is the offset or NONE. */
+        ACCESS,
+        /** Data is the pool index of the name; children are the arguments. */
+        CALL,
+        /** Children are the values. */
+        LIST
+    }
+
+    private byte[] kinds = new byte[16];
+    private int[] data = new int[16];
+    private int[] firsts = new int[16];
+    private int[] counts = new int[16];
+    private int size = 0;
+    private int[] links = new int[16];
+    private int linkCount = 0;
+    private final List<Object> pool = new ArrayList<>();
+
+    /**
+     * Encodes the given tree into a new arena, whose root is the last node.
+     */
+    public static AstArena of(Ast ast) {
+        AstArena arena = new AstArena();
+        new Encoder(arena).visit(ast);
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the root node, which is the last one added.
+     */
+    public int getRoot() {
+        if (size == 0) {
+            throw new IllegalStateException("The arena is empty.");
+        }
+        return size - 1;
+    }
+
+    public Kind getKind(int node) {
+        checkNode(node);
+        return KINDS[kinds[node]];
+    }
+
+    public int getChildCount(int node) {
+        checkNode(node);
+        return counts[node];
+    }
+
+    /**
+     * Returns the child of the node at the given position, or {@link #NONE}
+     * for an absent optional child.
+     */
+    public int getChild(int node, int index) {
+        checkNode(node);
+        if (index < 0 || index >= counts[node]) {
+            throw new IndexOutOfBoundsException("Child: " + index + ", Count: " + counts[node]);
+        }
+        return links[firsts[node] + index];
+    }
+
+    /**
+     * Returns the data slot of the node, which is either a count or a pool
+     * index depending on its kind.
+     */
+    public int getData(int node) {
+        checkNode(node);
+        return data[node];
+    }
+
+    /**
+     * Returns the name of a global, function, declaration, access, or call.
+     */
+    public String getName(int node) {
+        return (String) pool.get(getData(node));
+    }
+
+    /**
+     * Returns the operator of a binary expression.
+     */
+    public String getOperator(int node) {
+        return (String) pool.get(getData(node));
+    }
+
+    /**
+     * Returns the value of a literal expression.
+     */
+    public Object getLiteral(int node) {
+        return pool.get(getData(node));
+    }
+
+    /**
+     * Returns the value at the given offset from the data slot of the node
+     * in the pool, such as a type name. The layout for each kind is given by
+     * {@link Kind}.
+     */
+    public Object getValue(int node, int offset) {
+        return pool.get(getData(node) + offset);
+    }
+
+    /**
+     * Decodes the subtree rooted at the node back into {@link Ast} objects,
+     * or returns null for {@link #NONE}.
+     */
+    public Ast toAst(int node) {
+        if (node == NONE) {
+            return null;
+        }
+        switch (getKind(node)) {
+            case SOURCE: {
+                List<Ast.Global> globals = new ArrayList<Ast.Global>();
+                List<Ast.Function> functions = new ArrayList<Ast.Function>();
+                for (int i = 0; i < counts[node]; i++) {
+                    if (i < data[node]) {
+                        globals.add((Ast.Global) toAst(getChild(node, i)));
+                    } else {
+                        functions.add((Ast.Function) toAst(getChild(node, i)));
+                    }
+                }
+                return new Ast.Source(globals, functions);
+            }
+            case GLOBAL:
+                return new Ast.Global(getName(node), (String) getValue(node, 1), (Boolean) getValue(node, 2),
+                        Optional.ofNullable(expression(getChild(node, 0))));
+            case FUNCTION:
+                return new Ast.Function(getName(node), strings(getValue(node, 1)), strings(getValue(node, 2)),
+                        Optional.ofNullable((String) getValue(node, 3)), statements(node, 0, counts[node]));
+            case EXPRESSION:
+                return new Ast.Statement.Expression(expression(getChild(node, 0)));
+            case DECLARATION:
+                return new Ast.Statement.Declaration(getName(node), Optional.ofNullable((String) getValue(node, 1)),
+                        Optional.ofNullable(expression(getChild(node, 0))));
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment(expression(getChild(node, 0)), expression(getChild(node, 1)));
+            case IF:
+                return new Ast.Statement.If(expression(getChild(node, 0)),
+                        statements(node, 1, 1 + data[node]), statements(node, 1 + data[node], counts[node]));
+            case SWITCH: {
+                List<Ast.Statement.Case> cases = new ArrayList<Ast.Statement.Case>();
+                for (int i = 1; i < counts[node]; i++) {
+                    cases.add((Ast.Statement.Case) toAst(getChild(node, i)));
+                }
+                return new Ast.Statement.Switch(expression(getChild(node, 0)), cases);
+            }
+            case CASE:
+                return new Ast.Statement.Case(Optional.ofNullable(expression(getChild(node, 0))), statements(node, 1, counts[node]));
+            case WHILE:
+                return new Ast.Statement.While(expression(getChild(node, 0)), statements(node, 1, counts[node]));
+            case RETURN:
+                return new Ast.Statement.Return(expression(getChild(node, 0)));
+            case ERROR:
+                return new Ast.Statement.Error((String) getValue(node, 0), (Integer) getValue(node, 1));
+            case LITERAL:
+                return new Ast.Expression.Literal(getLiteral(node));
+            case GROUP:
+                return new Ast.Expression.Group(expression(getChild(node, 0)));
+            case BINARY:
+                return new Ast.Expression.Binary(getOperator(node), expression(getChild(node, 0)), expression(getChild(node, 1)));
+            case ACCESS:
+                return new Ast.Expression.Access(Optional.ofNullable(expression(getChild(node, 0))), getName(node));
+            case CALL:
+                return new Ast.Expression.Function(getName(node), expressions(node, 0));
+            case LIST:
+                return new Ast.Expression.PlcList(expressions(node, 0));
+            default:
+                throw new AssertionError("Unimplemented arena kind: " + getKind(node) + ".");
+        }
+    }
+
+    /**
+     * Calls the method of the visitor for the kind of the given node.
+     */
+    public <T> T accept(int node, Visitor<T> visitor) {
+        switch (getKind(node)) {
+            case SOURCE: return visitor.visitSource(node);
+            case GLOBAL: return visitor.visitGlobal(node);
+            case FUNCTION: return visitor.visitFunction(node);
+            case EXPRESSION: return visitor.visitExpression(node);
+            case DECLARATION: return visitor.visitDeclaration(node);
+            case ASSIGNMENT: return visitor.visitAssignment(node);
+            case IF: return visitor.visitIf(node);
+            case SWITCH: return visitor.visitSwitch(node);
+            case CASE: return visitor.visitCase(node);
+            case WHILE: return visitor.visitWhile(node);
+            case RETURN: return visitor.visitReturn(node);
+            case ERROR: return visitor.visitError(node);
+            case LITERAL: return visitor.visitLiteral(node);
+            case GROUP: return visitor.visitGroup(node);
+            case BINARY: return visitor.visitBinary(node);
+            case ACCESS: return visitor.visitAccess(node);
+            case CALL: return visitor.visitCall(node);
+            case LIST: return visitor.visitList(node);
+            default: throw new AssertionError("Unimplemented arena kind: " + getKind(node) + ".");
+        }
+    }
+
+    /**
+     * Visits arena nodes by id, with one method per {@link Kind} as with
+     * {@link Ast.Visitor}. Implementations hold the arena they walk and use
+     * {@link #accept(int, Visitor)} to visit children.
+     */
+    public interface Visitor<T> {
+
+        T visitSource(int node);
+
+        T visitGlobal(int node);
+
+        T visitFunction(int node);
+
+        T visitExpression(int node);
+
+        T visitDeclaration(int node);
+
+        T visitAssignment(int node);
+
+        T visitIf(int node);
+
+        T visitSwitch(int node);
+
+        T visitCase(int node);
+
+        T visitWhile(int node);
+
+        T visitReturn(int node);
+
+        T visitError(int node);
+
+        T visitLiteral(int node);
+
+        T visitGroup(int node);
+
+        T visitBinary(int node);
+
+        T visitAccess(int node);
+
+        T visitCall(int node);
+
+        T visitList(int node);
+
+    }
+
+    /**
+     * Appends a node whose children are the given node ids.
+     */
+    private int add(Kind kind, int value, int... children) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            data = Arrays.copyOf(data, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        if (linkCount + children.length > links.length) {
+            links = Arrays.copyOf(links, Math.max(links.length * 2, linkCount + children.length));
+        }
+        System.arraycopy(children, 0, links, linkCount, children.length);
+        kinds[size] = (byte) kind.ordinal();
+        data[size] = value;
+        firsts[size] = linkCount;
+        counts[size] = children.length;
+        linkCount += children.length;
+        return size++;
+    }
+
+    /**
+     * Adds the given values to the pool, returning the index of the first.
+     */
+    private int intern(Object... values) {
+        int index = pool.size();
+        pool.addAll(Arrays.asList(values));
+        return index;
+    }
+
+    private Ast.Expression expression(int node) {
+        return (Ast.Expression) toAst(node);
+    }
+
+    private List<Ast.Statement> statements(int node, int from, int to) {
+        List<Ast.Statement> statements = new ArrayList<Ast.Statement>();
+        for (int i = from; i < to; i++) {
+            statements.add((Ast.Statement) toAst(getChild(node, i)));
+        }
+        return statements;
+    }
+
+    private List<Ast.Expression> expressions(int node, int from) {
+        List<Ast.Expression> expressions = new ArrayList<Ast.Expression>();
+        for (int i = from; i < counts[node]; i++) {
+            expressions.add(expression(getChild(node, i)));
+        }
+        return expressions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> strings(Object value) {
+        return new ArrayList<>((List<String>) value);
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node: " + node + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Encodes an {@link Ast} bottom up, adding each node after its children.
+     */
+    private static final class Encoder implements Ast.Visitor<Integer> {
+
+        private final AstArena arena;
+
+        private Encoder(AstArena arena) {
+            this.arena = arena;
+        }
+
+        private int optional(Optional<? extends Ast> ast) {
+            return ast.isPresent() ? visit(ast.get()) : NONE;
+        }
+
+        @SafeVarargs
+        private final int[] all(int prefix, List<? extends Ast>... lists) {
+            int count = prefix;
+            for (List<? extends Ast> list : lists) {
+                count += list.size();
+            }
+            int[] children = new int[count];
+            int index = prefix;
+            for (List<? extends Ast> list : lists) {
+                for (Ast ast : list) {
+                    children[index++] = visit(ast);
+                }
+            }
+            return children;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return arena.add(Kind.SOURCE, ast.getGlobals().size(), all(0, ast.getGlobals(), ast.getFunctions()));
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            int value = optional(ast.getValue());
+            return arena.add(Kind.GLOBAL, arena.intern(ast.getName(), ast.getTypeName(), ast.getMutable()), value);
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            int[] statements = all(0, ast.getStatements());
+            return arena.add(Kind.FUNCTION, arena.intern(ast.getName(), ast.getParameters(),
+                    ast.getParameterTypeNames(), ast.getReturnTypeName().orElse(null)), statements);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return arena.add(Kind.EXPRESSION, NONE, visit(ast.getExpression()));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            int value = optional(ast.getValue());
+            return arena.add(Kind.DECLARATION, arena.intern(ast.getName(), ast.getTypeName().orElse(null)), value);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            int receiver = visit(ast.getReceiver());
+            int value = visit(ast.getValue());
+            return arena.add(Kind.ASSIGNMENT, NONE, receiver, value);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            int[] children = all(1, ast.getThenStatements(), ast.getElseStatements());
+            children[0] = visit(ast.getCondition());
+            return arena.add(Kind.IF, ast.getThenStatements().size(), children);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            int[] children = all(1, ast.getCases());
+            children[0] = visit(ast.getCondition());
+            return arena.add(Kind.SWITCH, NONE, children);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            int[] children = all(1, ast.getStatements());
+            children[0] = optional(ast.getValue());
+            return arena.add(Kind.CASE, NONE, children);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            int[] children = all(1, ast.getStatements());
+            children[0] = visit(ast.getCondition());
+            return arena.add(Kind.WHILE, NONE, children);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return arena.add(Kind.RETURN, NONE, visit(ast.getValue()));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Error ast) {
+            return arena.add(Kind.ERROR, arena.intern(ast.getMessage(), ast.getIndex()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return arena.add(Kind.LITERAL, arena.intern(ast.getLiteral()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return arena.add(Kind.GROUP, NONE, visit(ast.getExpression()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            int left = visit(ast.getLeft());
+            int right = visit(ast.getRight());
+            return arena.add(Kind.BINARY, arena.intern(ast.getOperator()), left, right);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            int offset = optional(ast.getOffset());
+            return arena.add(Kind.ACCESS, arena.intern(ast.getName()), offset);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return arena.add(Kind.CALL, arena.intern(ast.getName()), all(0, ast.getArguments()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return arena.add(Kind.LIST, NONE, all(0, ast.getValues()));
+        }
+
+    }
+
+}
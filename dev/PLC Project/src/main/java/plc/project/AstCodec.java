@@ -0,0 +1,618 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes an {@link Ast.Source} in a compact binary format, so that
+ * a program which has not changed can be loaded without lexing and parsing
+ * it again.
+ *
+ * The format starts with {@link #MAGIC} and {@link #VERSION}, followed by the
+ * tree in pre-order with a tag byte per node. Counts, indices, and lengths
+ * are variable length integers, and each distinct string is written once and
+ * referred to by number afterwards. Only the parsed tree is stored, not any
+ * variables, functions, or types set by the {@link Analyzer}.
+ */
+public final class AstCodec {
+
+    public static final int MAGIC = 0x504C4341;
+    public static final int VERSION = 1;
+
+    private static final int NONE = 0;
+    private static final int EXPRESSION = 1;
+    private static final int DECLARATION = 2;
+    private static final int ASSIGNMENT = 3;
+    private static final int IF = 4;
+    private static final int SWITCH = 5;
+    private static final int WHILE = 6;
+    private static final int RETURN = 7;
+    private static final int ERROR = 8;
+    private static final int NIL = 9;
+    private static final int TRUE = 10;
+    private static final int FALSE = 11;
+    private static final int INTEGER = 12;
+    private static final int DECIMAL = 13;
+    private static final int CHARACTER = 14;
+    private static final int STRING = 15;
+    private static final int GROUP = 16;
+    private static final int BINARY = 17;
+    private static final int ACCESS = 18;
+    private static final int FUNCTION = 19;
+    private static final int LIST = 20;
+
+    private AstCodec() {}
+
+    /**
+     * Writes the source to the stream, which is not closed.
+     */
+    public static void write(Ast.Source source, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.writeInt(MAGIC);
+        writer.writeVarInt(VERSION);
+        writer.writeSource(source);
+        writer.bytes.writeTo(out);
+    }
+
+    /**
+     * Reads a source written by {@link #write(Ast.Source, OutputStream)}
+     * from the rest of the stream, which is not closed.
+     */
+    public static Ast.Source read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+            bytes.write(chunk, 0, read);
+        }
+        return read(bytes.toByteArray());
+    }
+
+    /**
+     * Reads a source written by {@link #write(Ast.Source, OutputStream)}
+     * from the given bytes.
+     */
+    public static Ast.Source read(byte[] bytes) throws IOException {
+        Reader reader = new Reader(bytes);
+        try {
+            if (reader.readInt() != MAGIC) {
+                throw new IOException("Not an encoded AST.");
+            }
+            int version = reader.readVarInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported AST encoding version " + version + ".");
+            }
+            Ast.Source source = reader.readSource();
+            if (reader.index != bytes.length) {
+                throw new IOException("Unexpected data after the encoded AST.");
+            }
+            return source;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated AST encoding.", e);
+        }
+    }
+
+    /**
+     * Encodes nodes into a growing byte array. Strings are numbered in the
+     * order they are first written.
+     */
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final Bytes bytes = new Bytes();
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private void writeByte(int value) {
+            bytes.write(value);
+        }
+
+        private void writeInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        /**
+         * Writes a non-negative int in seven bit groups, low group first,
+         * with the high bit of each byte set if more follow.
+         */
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        /**
+         * Writes a string as 0 for null, 1 followed by the UTF-8 bytes for a
+         * new string, or the number of an earlier string plus 2.
+         */
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer id = strings.get(value);
+            if (id != null) {
+                writeVarInt(id + 2);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(1);
+            writeVarInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        private void writeStrings(List<String> values) {
+            writeVarInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        private void writeBigInteger(BigInteger value) {
+            byte[] magnitude = value.toByteArray();
+            writeVarInt(magnitude.length);
+            bytes.write(magnitude, 0, magnitude.length);
+        }
+
+        private void writeOptional(Optional<? extends Ast> ast) {
+            if (ast.isPresent()) {
+                visit(ast.get());
+            } else {
+                writeByte(NONE);
+            }
+        }
+
+        private void writeStatements(List<Ast.Statement> statements) {
+            writeVarInt(statements.size());
+            for (Ast.Statement statement : statements) {
+                visit(statement);
+            }
+        }
+
+        private void writeSource(Ast.Source source) {
+            visit(source);
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            writeVarInt(ast.getGlobals().size());
+            for (Ast.Global global : ast.getGlobals()) {
+                visit(global);
+            }
+            writeVarInt(ast.getFunctions().size());
+            for (Ast.Function function : ast.getFunctions()) {
+                visit(function);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            writeString(ast.getName());
+            writeString(ast.getTypeName());
+            writeByte(ast.getMutable() ? 1 : 0);
+            writeOptional(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            writeString(ast.getName());
+            writeStrings(ast.getParameters());
+            writeStrings(ast.getParameterTypeNames());
+            writeString(ast.getReturnTypeName().orElse(null));
+            writeStatements(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            writeByte(EXPRESSION);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            writeByte(DECLARATION);
+            writeString(ast.getName());
+            writeString(ast.getTypeName().orElse(null));
+            writeOptional(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            writeByte(ASSIGNMENT);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            writeByte(IF);
+            visit(ast.getCondition());
+            writeStatements(ast.getThenStatements());
+            writeStatements(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            writeByte(SWITCH);
+            visit(ast.getCondition());
+            writeVarInt(ast.getCases().size());
+            for (Ast.Statement.Case statement : ast.getCases()) {
+                visit(statement);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            writeOptional(ast.getValue());
+            writeStatements(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            writeByte(WHILE);
+            visit(ast.getCondition());
+            writeStatements(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            writeByte(RETURN);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Error ast) {
+            writeByte(ERROR);
+            writeString(ast.getMessage());
+            writeVarInt(ast.getIndex());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                writeByte(NIL);
+            } else if (literal instanceof Boolean) {
+                writeByte((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof BigInteger) {
+                writeByte(INTEGER);
+                writeBigInteger((BigInteger) literal);
+            } else if (literal instanceof BigDecimal) {
+                writeByte(DECIMAL);
+                writeBigInteger(((BigDecimal) literal).unscaledValue());
+                writeInt(((BigDecimal) literal).scale());
+            } else if (literal instanceof Character) {
+                writeByte(CHARACTER);
+                writeVarInt((Character) literal);
+            } else if (literal instanceof String) {
+                writeByte(STRING);
+                writeString((String) literal);
+            } else {
+                throw new IllegalArgumentException("Cannot encode a literal of " + literal.getClass() + ".");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            writeByte(GROUP);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            writeByte(BINARY);
+            writeString(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            writeByte(ACCESS);
+            writeString(ast.getName());
+            writeOptional(ast.getOffset());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            writeByte(FUNCTION);
+            writeString(ast.getName());
+            writeVarInt(ast.getArguments().size());
+            for (Ast.Expression argument : ast.getArguments()) {
+                visit(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            writeByte(LIST);
+            writeVarInt(ast.getValues().size());
+            for (Ast.Expression value : ast.getValues()) {
+                visit(value);
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * A byte array output stream whose buffer can be written straight to
+     * another stream without copying it.
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+
+        private Bytes() {
+            super(8192);
+        }
+
+        @Override
+        public void write(int value) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[count++] = (byte) value;
+        }
+
+    }
+
+    /**
+     * Decodes nodes from a byte array, the reverse of {@link Writer}.
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private final List<String> strings = new ArrayList<>();
+        private int index = 0;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() {
+            return bytes[index++] & 0xFF;
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = value << 8 | readByte();
+            }
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed integer in AST encoding.");
+        }
+
+        /**
+         * Reads the number of elements of a list, each of which takes at
+         * least one byte, so a count larger than the remaining input is
+         * corrupt rather than a reason to allocate.
+         */
+        private int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > bytes.length - index) {
+                throw new IOException("Malformed count " + count + " in AST encoding.");
+            }
+            return count;
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > bytes.length - index) {
+                throw new IOException("Truncated AST encoding.");
+            }
+            byte[] result = Arrays.copyOfRange(bytes, index, index + length);
+            index += length;
+            return result;
+        }
+
+        private BigInteger readInteger() throws IOException {
+            byte[] magnitude = readBytes();
+            if (magnitude.length == 0) {
+                throw new IOException("Malformed integer literal in AST encoding.");
+            }
+            return new BigInteger(magnitude);
+        }
+
+        private String readString() throws IOException {
+            int id = readVarInt();
+            if (id == 0) {
+                return null;
+            } else if (id == 1) {
+                int length = readVarInt();
+                if (length < 0 || length > bytes.length - index) {
+                    throw new IOException("Truncated AST encoding.");
+                }
+                String value = new String(bytes, index, length, StandardCharsets.UTF_8);
+                index += length;
+                strings.add(value);
+                return value;
+            } else if (id - 2 < strings.size()) {
+                return strings.get(id - 2);
+            }
+            throw new IOException("Undefined string " + (id - 2) + " in AST encoding.");
+        }
+
+        private List<String> readStrings() throws IOException {
+            int count = readCount();
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private Ast.Source readSource() throws IOException {
+            int globalCount = readCount();
+            List<Ast.Global> globals = new ArrayList<Ast.Global>(globalCount);
+            for (int i = 0; i < globalCount; i++) {
+                String name = readString();
+                String typeName = readString();
+                boolean mutable = readByte() != 0;
+                globals.add(new Ast.Global(name, typeName, mutable, Optional.ofNullable(readExpression(readByte()))));
+            }
+            int functionCount = readCount();
+            List<Ast.Function> functions = new ArrayList<Ast.Function>(functionCount);
+            for (int i = 0; i < functionCount; i++) {
+                String name = readString();
+                List<String> parameters = readStrings();
+                List<String> parameterTypeNames = readStrings();
+                Optional<String> returnTypeName = Optional.ofNullable(readString());
+                functions.add(new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, readStatements()));
+            }
+            return new Ast.Source(globals, functions);
+        }
+
+        private List<Ast.Statement> readStatements() throws IOException {
+            int count = readCount();
+            List<Ast.Statement> statements = new ArrayList<Ast.Statement>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private Ast.Statement readStatement() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case EXPRESSION:
+                    return new Ast.Statement.Expression(readExpression());
+                case DECLARATION: {
+                    String name = readString();
+                    Optional<String> typeName = Optional.ofNullable(readString());
+                    return new Ast.Statement.Declaration(name, typeName, Optional.ofNullable(readExpression(readByte())));
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression receiver = readExpression();
+                    return new Ast.Statement.Assignment(receiver, readExpression());
+                }
+                case IF: {
+                    Ast.Expression condition = readExpression();
+                    List<Ast.Statement> thenStatements = readStatements();
+                    return new Ast.Statement.If(condition, thenStatements, readStatements());
+                }
+                case SWITCH: {
+                    Ast.Expression condition = readExpression();
+                    int count = readCount();
+                    List<Ast.Statement.Case> cases = new ArrayList<Ast.Statement.Case>(count);
+                    for (int i = 0; i < count; i++) {
+                        Optional<Ast.Expression> value = Optional.ofNullable(readExpression(readByte()));
+                        cases.add(new Ast.Statement.Case(value, readStatements()));
+                    }
+                    return new Ast.Statement.Switch(condition, cases);
+                }
+                case WHILE: {
+                    Ast.Expression condition = readExpression();
+                    return new Ast.Statement.While(condition, readStatements());
+                }
+                case RETURN:
+                    return new Ast.Statement.Return(readExpression());
+                case ERROR: {
+                    String message = readString();
+                    return new Ast.Statement.Error(message, readVarInt());
+                }
+                default:
+                    throw new IOException("Unknown statement tag " + tag + " in AST encoding.");
+            }
+        }
+
+        private Ast.Expression readExpression() throws IOException {
+            Ast.Expression expression = readExpression(readByte());
+            if (expression == null) {
+                throw new IOException("Missing expression in AST encoding.");
+            }
+            return expression;
+        }
+
+        /**
+         * Reads the expression with the given tag, or returns null for an
+         * absent optional expression.
+         */
+        private Ast.Expression readExpression(int tag) throws IOException {
+            switch (tag) {
+                case NONE:
+                    return null;
+                case NIL:
+                    return new Ast.Expression.Literal(null);
+                case TRUE:
+                    return new Ast.Expression.Literal(Boolean.TRUE);
+                case FALSE:
+                    return new Ast.Expression.Literal(Boolean.FALSE);
+                case INTEGER:
+                    return new Ast.Expression.Literal(readInteger());
+                case DECIMAL: {
+                    BigInteger unscaled = readInteger();
+                    return new Ast.Expression.Literal(new BigDecimal(unscaled, readInt()));
+                }
+                case CHARACTER:
+                    return new Ast.Expression.Literal((char) readVarInt());
+                case STRING:
+                    return new Ast.Expression.Literal(readString());
+                case GROUP:
+                    return new Ast.Expression.Group(readExpression());
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expression left = readExpression();
+                    return new Ast.Expression.Binary(operator, left, readExpression());
+                }
+                case ACCESS: {
+                    String name = readString();
+                    return new Ast.Expression.Access(Optional.ofNullable(readExpression(readByte())), name);
+                }
+                case FUNCTION:
+                case LIST: {
+                    String name = tag == FUNCTION ? readString() : null;
+                    int count = readCount();
+                    List<Ast.Expression> values = new ArrayList<Ast.Expression>(count);
+                    for (int i = 0; i < count; i++) {
+                        values.add(readExpression());
+                    }
+                    return tag == FUNCTION ? new Ast.Expression.Function(name, values) : new Ast.Expression.PlcList(values);
+                }
+                default:
+                    throw new IOException("Unknown expression tag " + tag + " in AST encoding.");
+            }
+        }
+
+    }
+
+}
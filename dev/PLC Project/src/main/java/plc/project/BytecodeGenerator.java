@@ -0,0 +1,762 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a source straight to a JVM class, as an alternative to printing
+ * Java source with the {@link Generator} and compiling that with javac. The
+ * class has the same shape as the generated source: each global is a field
+ * initialized by the constructor, each function is an instance method, and a
+ * static {@code main(String[])} method calls {@code main()} if it is defined.
+ *
+ * Globals, parameters, and variables have the JVM type named by {@link
+ * Environment.Type#getJvmName()} for their declared type, so an Integer is an
+ * {@code int} and a Decimal is a {@code double}, and a global list is an
+ * array of its element type. Operators follow Java, including short circuit
+ * evaluation, numeric promotion, and reference equality for objects, except
+ * that {@code ^} gives an {@code int} if both operands are integers and a
+ * matching case does not fall through to the next one. Since the types come
+ * from the declarations, the source does not need to have been analyzed.
+ */
+public final class BytecodeGenerator {
+
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String STRING = "Ljava/lang/String;";
+
+    private final String className;
+
+    /**
+     * Creates a generator for classes with the given binary name, such as
+     * {@code Main}.
+     */
+    public BytecodeGenerator(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Returns the class file for the source.
+     */
+    public byte[] generate(Ast.Source ast) {
+        Emitter emitter = new Emitter(className.replace('.', '/'));
+        emitter.visit(ast);
+        return emitter.file.toByteArray();
+    }
+
+    /**
+     * Generates the class for the source and defines it in a new class loader.
+     */
+    public Class<?> load(Ast.Source ast) {
+        return new Loader().define(className, generate(ast));
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        private Loader() {
+            super(BytecodeGenerator.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+    }
+
+    /**
+     * Returns the descriptor of the JVM type of a PLC type.
+     */
+    private static String descriptor(String typeName) {
+        String jvmName = Environment.getType(typeName).getJvmName();
+        switch (jvmName) {
+            case "int": return "I";
+            case "double": return "D";
+            case "boolean": return "Z";
+            case "char": return "C";
+            case "String": return STRING;
+            case "Object": return OBJECT;
+            case "Comparable": return "Ljava/lang/Comparable;";
+            case "Void": return "Ljava/lang/Void;";
+            default: throw new RuntimeException("Unsupported type " + typeName + ".");
+        }
+    }
+
+    private static boolean isInteger(String descriptor) {
+        return descriptor.equals("I") || descriptor.equals("C");
+    }
+
+    private static boolean isNumeric(String descriptor) {
+        return isInteger(descriptor) || descriptor.equals("D");
+    }
+
+    /**
+     * Returns the internal name of the box class of a primitive descriptor.
+     */
+    private static String box(String descriptor) {
+        switch (descriptor) {
+            case "I": return "java/lang/Integer";
+            case "D": return "java/lang/Double";
+            case "Z": return "java/lang/Boolean";
+            case "C": return "java/lang/Character";
+            default: return null;
+        }
+    }
+
+    private static final class Local {
+
+        private final int slot;
+        private final String descriptor;
+
+        private Local(int slot, String descriptor) {
+            this.slot = slot;
+            this.descriptor = descriptor;
+        }
+
+    }
+
+    private static final class Signature {
+
+        private final List<String> parameters;
+        private final String returnType;
+        private final String descriptor;
+
+        private Signature(List<String> parameters, String returnType) {
+            this.parameters = parameters;
+            this.returnType = returnType;
+            this.descriptor = "(" + String.join("", parameters) + ")" + returnType;
+        }
+
+    }
+
+    /**
+     * Emits the class, visiting each expression to push its value and
+     * returning the descriptor of that value ({@code V} if there is none).
+     * Statements leave the stack empty and return null.
+     */
+    private static final class Emitter implements Ast.Visitor<String> {
+
+        private final String owner;
+        private final ClassFile file;
+        private final Map<String, String> globals = new HashMap<>();
+        private final Set<String> constants = new HashSet<>();
+        private final Map<String, Signature> functions = new HashMap<>();
+        private final List<Map<String, Local>> blocks = new ArrayList<>();
+        private ClassFile.Code code;
+        private String returnType;
+
+        private Emitter(String owner) {
+            this.owner = owner;
+            this.file = new ClassFile(owner, "java/lang/Object");
+        }
+
+        @Override
+        public String visit(Ast.Source ast) {
+            for (Ast.Global global : ast.getGlobals()) {
+                String descriptor = descriptor(global.getTypeName());
+                if (global.getValue().isPresent() && global.getValue().get() instanceof Ast.Expression.PlcList) {
+                    descriptor = "[" + descriptor;
+                }
+                if (globals.put(global.getName(), descriptor) != null) {
+                    throw new RuntimeException("The variable " + global.getName() + " is already defined.");
+                }
+                if (!global.getMutable()) {
+                    constants.add(global.getName());
+                }
+                file.addField(ClassFile.ACC_PUBLIC | (global.getMutable() ? 0 : ClassFile.ACC_FINAL), global.getName(), descriptor);
+            }
+            for (Ast.Function function : ast.getFunctions()) {
+                List<String> parameters = new ArrayList<>();
+                for (String typeName : function.getParameterTypeNames()) {
+                    parameters.add(descriptor(typeName));
+                }
+                String returnType = function.getReturnTypeName().orElse("Nil");
+                String key = function.getName() + "/" + parameters.size();
+                Signature signature = new Signature(parameters, returnType.equals("Nil") ? "V" : descriptor(returnType));
+                if (functions.put(key, signature) != null) {
+                    throw new RuntimeException("The function " + key + " is already defined.");
+                }
+            }
+            code = file.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V");
+            code.load(OBJECT, 0);
+            code.invoke(ClassFile.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+            for (Ast.Global global : ast.getGlobals()) {
+                visit(global);
+            }
+            code.op(ClassFile.RETURN, 0);
+            for (Ast.Function function : ast.getFunctions()) {
+                visit(function);
+            }
+            Signature main = functions.get("main/0");
+            if (main != null && main.returnType.equals("I")) {
+                code = file.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "main", "([Ljava/lang/String;)V");
+                code.type(ClassFile.NEW, owner, 1);
+                code.op(ClassFile.DUP, 1);
+                code.invoke(ClassFile.INVOKESPECIAL, owner, "<init>", "()V");
+                code.invoke(ClassFile.INVOKEVIRTUAL, owner, "main", "()I");
+                code.invoke(ClassFile.INVOKESTATIC, "java/lang/System", "exit", "(I)V");
+                code.op(ClassFile.RETURN, 0);
+            }
+            return null;
+        }
+
+        /**
+         * Emits the initialization of a global into the constructor.
+         */
+        @Override
+        public String visit(Ast.Global ast) {
+            if (!ast.getValue().isPresent()) {
+                return null;
+            }
+            String descriptor = globals.get(ast.getName());
+            code.load(OBJECT, 0);
+            if (descriptor.startsWith("[")) {
+                String element = descriptor.substring(1);
+                List<Ast.Expression> values = ((Ast.Expression.PlcList) ast.getValue().get()).getValues();
+                code.pushInt(values.size());
+                switch (element) {
+                    case "Z": code.op(ClassFile.NEWARRAY, 4, 0); break;
+                    case "C": code.op(ClassFile.NEWARRAY, 5, 0); break;
+                    case "D": code.op(ClassFile.NEWARRAY, 7, 0); break;
+                    case "I": code.op(ClassFile.NEWARRAY, 10, 0); break;
+                    default: code.type(ClassFile.ANEWARRAY, element.substring(1, element.length() - 1), 0); break;
+                }
+                for (int i = 0; i < values.size(); i++) {
+                    code.op(ClassFile.DUP, 1);
+                    code.pushInt(i);
+                    coerce(visit(values.get(i)), element);
+                    arrayStore(element);
+                }
+            } else {
+                coerce(visit(ast.getValue().get()), descriptor);
+            }
+            code.field(ClassFile.PUTFIELD, owner, ast.getName(), descriptor);
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Function ast) {
+            Signature signature = functions.get(ast.getName() + "/" + ast.getParameters().size());
+            code = file.addMethod(ClassFile.ACC_PUBLIC, ast.getName(), signature.descriptor);
+            returnType = signature.returnType;
+            Map<String, Local> parameters = new HashMap<>();
+            int slot = 1;
+            for (int i = 0; i < ast.getParameters().size(); i++) {
+                String descriptor = signature.parameters.get(i);
+                if (parameters.put(ast.getParameters().get(i), new Local(slot, descriptor)) != null) {
+                    throw new RuntimeException("The variable " + ast.getParameters().get(i) + " is already defined in this scope.");
+                }
+                slot += ClassFile.size(descriptor);
+            }
+            blocks.add(parameters);
+            for (Ast.Statement statement : ast.getStatements()) {
+                visit(statement);
+            }
+            blocks.clear();
+            if (returnType.equals("V")) {
+                code.op(ClassFile.RETURN, 0);
+            } else {
+                pushDefault(returnType);
+                returnValue(returnType);
+            }
+            return null;
+        }
+
+        private void block(List<Ast.Statement> statements) {
+            int locals = code.getLocals();
+            blocks.add(new HashMap<>());
+            for (Ast.Statement statement : statements) {
+                visit(statement);
+            }
+            blocks.remove(blocks.size() - 1);
+            code.setLocals(locals);
+        }
+
+        private Local lookup(String name) {
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Local local = blocks.get(i).get(name);
+                if (local != null) {
+                    return local;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Expression ast) {
+            String type = visit(ast.getExpression());
+            if (ClassFile.size(type) == 1) {
+                code.op(ClassFile.POP, -1);
+            } else if (ClassFile.size(type) == 2) {
+                code.op(ClassFile.POP2, -2);
+            }
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Declaration ast) {
+            String type = ast.getTypeName().isPresent() ? descriptor(ast.getTypeName().get()) : null;
+            if (ast.getValue().isPresent()) {
+                String value = visit(ast.getValue().get());
+                if (type == null) {
+                    type = value;
+                }
+                coerce(value, type);
+            } else if (type != null) {
+                pushDefault(type);
+            } else {
+                throw new RuntimeException("The variable " + ast.getName() + " has no type or value.");
+            }
+            Map<String, Local> block = blocks.get(blocks.size() - 1);
+            if (block.containsKey(ast.getName())) {
+                throw new RuntimeException("The variable " + ast.getName() + " is already defined in this scope.");
+            }
+            int slot = code.allocate(type);
+            code.store(type, slot);
+            block.put(ast.getName(), new Local(slot, type));
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                throw new RuntimeException("Cannot assign to " + ast.getReceiver() + ".");
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+            Local local = lookup(receiver.getName());
+            String type = local != null ? local.descriptor : globals.get(receiver.getName());
+            if (type == null) {
+                throw new RuntimeException("The variable " + receiver.getName() + " is not defined.");
+            }
+            if (receiver.getOffset().isPresent()) {
+                String element = element(type, receiver.getName());
+                variable(receiver.getName(), local, type);
+                coerce(visit(receiver.getOffset().get()), "I");
+                coerce(visit(ast.getValue()), element);
+                arrayStore(element);
+            } else if (local != null) {
+                coerce(visit(ast.getValue()), type);
+                code.store(type, local.slot);
+            } else {
+                if (constants.contains(receiver.getName())) {
+                    throw new RuntimeException("The variable " + receiver.getName() + " is immutable.");
+                }
+                code.load(OBJECT, 0);
+                coerce(visit(ast.getValue()), type);
+                code.field(ClassFile.PUTFIELD, owner, receiver.getName(), type);
+            }
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.If ast) {
+            ClassFile.Label otherwise = code.label();
+            ClassFile.Label end = code.label();
+            coerce(visit(ast.getCondition()), "Z");
+            code.jump(ClassFile.IFEQ, otherwise, 1);
+            block(ast.getThenStatements());
+            code.jump(ClassFile.GOTO, end, 0);
+            code.mark(otherwise);
+            block(ast.getElseStatements());
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Switch ast) {
+            String type = visit(ast.getCondition());
+            if (!isInteger(type)) {
+                throw new RuntimeException("Cannot switch on a value of type " + type + ".");
+            }
+            int locals = code.getLocals();
+            int condition = code.allocate("I");
+            code.store("I", condition);
+            ClassFile.Label end = code.label();
+            blocks.add(new HashMap<>());
+            for (Ast.Statement.Case statement : ast.getCases()) {
+                if (statement.getValue().isPresent()) {
+                    ClassFile.Label next = code.label();
+                    code.load("I", condition);
+                    coerce(visit(statement.getValue().get()), "I");
+                    code.jump(ClassFile.IF_ICMPNE, next, 2);
+                    visit(statement);
+                    code.jump(ClassFile.GOTO, end, 0);
+                    code.mark(next);
+                } else {
+                    visit(statement);
+                }
+            }
+            code.mark(end);
+            blocks.remove(blocks.size() - 1);
+            code.setLocals(locals);
+            return null;
+        }
+
+        /**
+         * Emits the statements of a case into the block of its switch.
+         */
+        @Override
+        public String visit(Ast.Statement.Case ast) {
+            for (Ast.Statement statement : ast.getStatements()) {
+                visit(statement);
+            }
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.While ast) {
+            ClassFile.Label start = code.label();
+            ClassFile.Label end = code.label();
+            code.mark(start);
+            coerce(visit(ast.getCondition()), "Z");
+            code.jump(ClassFile.IFEQ, end, 1);
+            block(ast.getStatements());
+            code.jump(ClassFile.GOTO, start, 0);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Return ast) {
+            String type = visit(ast.getValue());
+            if (returnType.equals("V")) {
+                code.op(ClassFile.size(type) == 2 ? ClassFile.POP2 : ClassFile.POP, -ClassFile.size(type));
+                code.op(ClassFile.RETURN, 0);
+            } else {
+                coerce(type, returnType);
+                returnValue(returnType);
+            }
+            return null;
+        }
+
+        @Override
+        public String visit(Ast.Statement.Error ast) {
+            throw new RuntimeException("Cannot generate a syntax error: " + ast.getMessage() + ".");
+        }
+
+        @Override
+        public String visit(Ast.Expression.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                code.op(ClassFile.ACONST_NULL, 1);
+                return OBJECT;
+            } else if (literal instanceof Boolean) {
+                code.pushInt((Boolean) literal ? 1 : 0);
+                return "Z";
+            } else if (literal instanceof BigInteger) {
+                try {
+                    code.pushInt(((BigInteger) literal).intValueExact());
+                } catch (ArithmeticException e) {
+                    throw new RuntimeException("The integer " + literal + " does not fit in an int.");
+                }
+                return "I";
+            } else if (literal instanceof BigDecimal) {
+                code.pushDouble(((BigDecimal) literal).doubleValue());
+                return "D";
+            } else if (literal instanceof Character) {
+                code.pushInt((Character) literal);
+                return "C";
+            } else if (literal instanceof String) {
+                code.pushString((String) literal);
+                return STRING;
+            }
+            throw new RuntimeException("Unsupported literal " + literal + ".");
+        }
+
+        @Override
+        public String visit(Ast.Expression.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public String visit(Ast.Expression.Binary ast) {
+            String operator = ast.getOperator();
+            switch (operator) {
+                case "&&":
+                case "||": {
+                    ClassFile.Label shortCircuit = code.label();
+                    ClassFile.Label end = code.label();
+                    coerce(visit(ast.getLeft()), "Z");
+                    code.jump(operator.equals("&&") ? ClassFile.IFEQ : ClassFile.IFNE, shortCircuit, 1);
+                    coerce(visit(ast.getRight()), "Z");
+                    code.jump(ClassFile.GOTO, end, 0);
+                    code.mark(shortCircuit);
+                    code.setStack(code.getStack() - 1);
+                    code.pushInt(operator.equals("&&") ? 0 : 1);
+                    code.mark(end);
+                    return "Z";
+                }
+                case "<":
+                case ">":
+                case "==":
+                case "!=":
+                    return compare(ast);
+                case "+":
+                case "-":
+                case "*":
+                case "/":
+                    return arithmetic(ast);
+                case "^": {
+                    String left = visit(ast.getLeft());
+                    coerce(left, "D");
+                    String right = visit(ast.getRight());
+                    coerce(right, "D");
+                    code.invoke(ClassFile.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+                    if (isInteger(left) && isInteger(right)) {
+                        code.op(ClassFile.D2I, -1);
+                        return "I";
+                    }
+                    return "D";
+                }
+                default:
+                    throw new RuntimeException("Unsupported operator " + operator + ".");
+            }
+        }
+
+        /**
+         * Promotes the two operands on the stack to a common numeric type,
+         * which is returned, or returns null if either is not numeric.
+         */
+        private String promote(String left, String right) {
+            if (!isNumeric(left) || !isNumeric(right)) {
+                return null;
+            } else if (isInteger(left) && isInteger(right)) {
+                return "I";
+            } else if (isInteger(right)) {
+                code.op(ClassFile.I2D, 1);
+            } else if (isInteger(left)) {
+                int locals = code.getLocals();
+                int temporary = code.allocate("D");
+                code.store("D", temporary);
+                code.op(ClassFile.I2D, 1);
+                code.load("D", temporary);
+                code.setLocals(locals);
+            }
+            return "D";
+        }
+
+        private String compare(Ast.Expression.Binary ast) {
+            String operator = ast.getOperator();
+            String left = visit(ast.getLeft());
+            String right = visit(ast.getRight());
+            String type = promote(left, right);
+            boolean equals = operator.equals("==");
+            ClassFile.Label match = code.label();
+            ClassFile.Label end = code.label();
+            if (type == null) {
+                if (operator.equals("<") || operator.equals(">")) {
+                    throw new RuntimeException("Cannot compare values of type " + left + " and " + right + ".");
+                } else if (left.equals("Z") && right.equals("Z")) {
+                    code.jump(equals ? ClassFile.IF_ICMPEQ : ClassFile.IF_ICMPNE, match, 2);
+                } else if (ClassFile.isReference(left) && ClassFile.isReference(right)) {
+                    code.jump(equals ? ClassFile.IF_ACMPEQ : ClassFile.IF_ACMPNE, match, 2);
+                } else {
+                    throw new RuntimeException("Cannot compare values of type " + left + " and " + right + ".");
+                }
+            } else if (type.equals("I")) {
+                switch (operator) {
+                    case "<": code.jump(ClassFile.IF_ICMPLT, match, 2); break;
+                    case ">": code.jump(ClassFile.IF_ICMPGT, match, 2); break;
+                    default: code.jump(equals ? ClassFile.IF_ICMPEQ : ClassFile.IF_ICMPNE, match, 2); break;
+                }
+            } else {
+                code.op(operator.equals("<") ? ClassFile.DCMPG : ClassFile.DCMPL, -3);
+                switch (operator) {
+                    case "<": code.jump(ClassFile.IFLT, match, 1); break;
+                    case ">": code.jump(ClassFile.IFGT, match, 1); break;
+                    default: code.jump(equals ? ClassFile.IFEQ : ClassFile.IFNE, match, 1); break;
+                }
+            }
+            code.pushInt(0);
+            code.jump(ClassFile.GOTO, end, 0);
+            code.mark(match);
+            code.setStack(code.getStack() - 1);
+            code.pushInt(1);
+            code.mark(end);
+            return "Z";
+        }
+
+        private String arithmetic(Ast.Expression.Binary ast) {
+            String operator = ast.getOperator();
+            String left = visit(ast.getLeft());
+            String right = visit(ast.getRight());
+            if (operator.equals("+") && (left.equals(STRING) || right.equals(STRING))) {
+                int locals = code.getLocals();
+                int temporary = code.allocate(STRING);
+                stringify(right);
+                code.store(STRING, temporary);
+                stringify(left);
+                code.load(STRING, temporary);
+                code.setLocals(locals);
+                code.invoke(ClassFile.INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+                return STRING;
+            }
+            String type = promote(left, right);
+            if (type == null) {
+                throw new RuntimeException("Cannot apply " + operator + " to values of type " + left + " and " + right + ".");
+            }
+            boolean integer = type.equals("I");
+            switch (operator) {
+                case "+": code.op(integer ? ClassFile.IADD : ClassFile.DADD, -ClassFile.size(type)); break;
+                case "-": code.op(integer ? ClassFile.ISUB : ClassFile.DSUB, -ClassFile.size(type)); break;
+                case "*": code.op(integer ? ClassFile.IMUL : ClassFile.DMUL, -ClassFile.size(type)); break;
+                default: code.op(integer ? ClassFile.IDIV : ClassFile.DDIV, -ClassFile.size(type)); break;
+            }
+            return type;
+        }
+
+        /**
+         * Converts the value on top of the stack to a string with
+         * {@link String#valueOf}, so that null becomes {@code "null"}.
+         */
+        private void stringify(String type) {
+            String parameter = ClassFile.isReference(type) ? OBJECT : type;
+            code.invoke(ClassFile.INVOKESTATIC, "java/lang/String", "valueOf", "(" + parameter + ")" + STRING);
+        }
+
+        @Override
+        public String visit(Ast.Expression.Access ast) {
+            Local local = lookup(ast.getName());
+            String type = local != null ? local.descriptor : globals.get(ast.getName());
+            if (type == null) {
+                throw new RuntimeException("The variable " + ast.getName() + " is not defined.");
+            }
+            variable(ast.getName(), local, type);
+            if (!ast.getOffset().isPresent()) {
+                return type;
+            }
+            String element = element(type, ast.getName());
+            coerce(visit(ast.getOffset().get()), "I");
+            switch (element) {
+                case "I": code.op(ClassFile.IALOAD, -1); break;
+                case "D": code.op(ClassFile.DALOAD, 0); break;
+                case "Z": code.op(ClassFile.BALOAD, -1); break;
+                case "C": code.op(ClassFile.CALOAD, -1); break;
+                default: code.op(ClassFile.AALOAD, -1); break;
+            }
+            return element;
+        }
+
+        /**
+         * Pushes the value of a local or global.
+         */
+        private void variable(String name, Local local, String type) {
+            if (local != null) {
+                code.load(type, local.slot);
+            } else {
+                code.load(OBJECT, 0);
+                code.field(ClassFile.GETFIELD, owner, name, type);
+            }
+        }
+
+        private static String element(String type, String name) {
+            if (!type.startsWith("[")) {
+                throw new RuntimeException("The variable " + name + " is not a list.");
+            }
+            return type.substring(1);
+        }
+
+        @Override
+        public String visit(Ast.Expression.Function ast) {
+            String key = ast.getName() + "/" + ast.getArguments().size();
+            Signature signature = functions.get(key);
+            if (signature != null) {
+                code.load(OBJECT, 0);
+                for (int i = 0; i < ast.getArguments().size(); i++) {
+                    coerce(visit(ast.getArguments().get(i)), signature.parameters.get(i));
+                }
+                code.invoke(ClassFile.INVOKEVIRTUAL, owner, ast.getName(), signature.descriptor);
+                return signature.returnType;
+            }
+            switch (key) {
+                case "print/1": {
+                    code.field(ClassFile.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                    String type = visit(ast.getArguments().get(0));
+                    if (ClassFile.isReference(type) && !type.equals(STRING)) {
+                        type = OBJECT;
+                    }
+                    code.invoke(ClassFile.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(" + type + ")V");
+                    return "V";
+                }
+                case "logarithm/1":
+                    coerce(visit(ast.getArguments().get(0)), "D");
+                    code.invoke(ClassFile.INVOKESTATIC, "java/lang/Math", "log", "(D)D");
+                    return "D";
+                default:
+                    throw new RuntimeException("The function " + key + " is not defined.");
+            }
+        }
+
+        @Override
+        public String visit(Ast.Expression.PlcList ast) {
+            throw new RuntimeException("Lists are only supported as the value of a global.");
+        }
+
+        /**
+         * Converts the value on the stack from one type to another, widening
+         * numbers, boxing and unboxing primitives, and casting references.
+         */
+        private void coerce(String from, String to) {
+            if (from.equals(to)) {
+                return;
+            } else if (from.equals("V")) {
+                throw new RuntimeException("Expected a value of type " + to + ", but the expression has no value.");
+            } else if (isInteger(from) && to.equals("D")) {
+                code.op(ClassFile.I2D, 1);
+            } else if (from.equals("C") && to.equals("I")) {
+                return;
+            } else if (from.equals("I") && to.equals("C")) {
+                code.op(ClassFile.I2C, 0);
+            } else if (box(from) != null && ClassFile.isReference(to)) {
+                code.invoke(ClassFile.INVOKESTATIC, box(from), "valueOf", "(" + from + ")L" + box(from) + ";");
+                coerce("L" + box(from) + ";", to);
+            } else if (ClassFile.isReference(from) && box(to) != null) {
+                coerce(from, "L" + box(to) + ";");
+                String name = to.equals("I") ? "int" : to.equals("D") ? "double" : to.equals("Z") ? "boolean" : "char";
+                code.invoke(ClassFile.INVOKEVIRTUAL, box(to), name + "Value", "()" + to);
+            } else if (ClassFile.isReference(from) && ClassFile.isReference(to)) {
+                if (!to.equals(OBJECT) && !to.equals("Ljava/lang/Comparable;")) {
+                    code.type(ClassFile.CHECKCAST, to.startsWith("[") ? to : to.substring(1, to.length() - 1), 0);
+                }
+            } else {
+                throw new RuntimeException("Cannot convert a value of type " + from + " to " + to + ".");
+            }
+        }
+
+        private void pushDefault(String type) {
+            if (type.equals("D")) {
+                code.pushDouble(0);
+            } else if (ClassFile.isReference(type)) {
+                code.op(ClassFile.ACONST_NULL, 1);
+            } else {
+                code.pushInt(0);
+            }
+        }
+
+        private void returnValue(String type) {
+            if (type.equals("D")) {
+                code.op(ClassFile.DRETURN, -2);
+            } else if (ClassFile.isReference(type)) {
+                code.op(ClassFile.ARETURN, -1);
+            } else {
+                code.op(ClassFile.IRETURN, -1);
+            }
+        }
+
+        private void arrayStore(String element) {
+            switch (element) {
+                case "I": code.op(ClassFile.IASTORE, -3); break;
+                case "D": code.op(ClassFile.DASTORE, -4); break;
+                case "Z": code.op(ClassFile.BASTORE, -3); break;
+                case "C": code.op(ClassFile.CASTORE, -3); break;
+                default: code.op(ClassFile.AASTORE, -3); break;
+            }
+        }
+
+    }
+
+}
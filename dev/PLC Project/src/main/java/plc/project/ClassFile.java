@@ -0,0 +1,517 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JVM class file with fields and methods, for the {@link
+ * BytecodeGenerator}. Classes use version 49 (Java 5), which is verified by
+ * type inference, so methods do not need stack map frames.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0E;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2E;
+    static final int DALOAD = 0x31;
+    static final int AALOAD = 0x32;
+    static final int BALOAD = 0x33;
+    static final int CALOAD = 0x34;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3A;
+    static final int IASTORE = 0x4F;
+    static final int DASTORE = 0x52;
+    static final int AASTORE = 0x53;
+    static final int BASTORE = 0x54;
+    static final int CASTORE = 0x55;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int DADD = 0x63;
+    static final int ISUB = 0x64;
+    static final int DSUB = 0x67;
+    static final int IMUL = 0x68;
+    static final int DMUL = 0x6B;
+    static final int IDIV = 0x6C;
+    static final int DDIV = 0x6F;
+    static final int I2D = 0x87;
+    static final int D2I = 0x8E;
+    static final int I2C = 0x92;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGT = 0x9D;
+    static final int IF_ICMPEQ = 0x9F;
+    static final int IF_ICMPNE = 0xA0;
+    static final int IF_ICMPLT = 0xA1;
+    static final int IF_ICMPGT = 0xA3;
+    static final int IF_ACMPEQ = 0xA5;
+    static final int IF_ACMPNE = 0xA6;
+    static final int GOTO = 0xA7;
+    static final int IRETURN = 0xAC;
+    static final int DRETURN = 0xAF;
+    static final int ARETURN = 0xB0;
+    static final int RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int NEW = 0xBB;
+    static final int NEWARRAY = 0xBC;
+    static final int ANEWARRAY = 0xBD;
+    static final int CHECKCAST = 0xC0;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(pool);
+    private final Map<String, Integer> indices = new HashMap<>();
+    private int count = 1;
+    private final String name;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFile(String name, String superName) {
+        this.name = name;
+        this.thisClass = classReference(name);
+        this.superClass = classReference(superName);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the index of a constant, adding it with the given writer if it
+     * is not already in the pool. Long and double constants take two slots.
+     */
+    private int constant(String key, int slots, IOAction writer) {
+        Integer index = indices.get(key);
+        if (index == null) {
+            try {
+                writer.run();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            index = count;
+            count += slots;
+            if (count > 0xFFFF) {
+                throw new IllegalStateException("Too many constants in class " + name + ".");
+            }
+            indices.put(key, index);
+        }
+        return index;
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+
+        void run() throws IOException;
+
+    }
+
+    int utf8(String value) {
+        return constant("Utf8 " + value, 1, () -> {
+            constants.writeByte(1);
+            constants.writeUTF(value);
+        });
+    }
+
+    int classReference(String internalName) {
+        int name = utf8(internalName);
+        return constant("Class " + internalName, 1, () -> {
+            constants.writeByte(7);
+            constants.writeShort(name);
+        });
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return constant("String " + value, 1, () -> {
+            constants.writeByte(8);
+            constants.writeShort(utf8);
+        });
+    }
+
+    int integer(int value) {
+        return constant("Integer " + value, 1, () -> {
+            constants.writeByte(3);
+            constants.writeInt(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        return constant("Double " + Double.doubleToRawLongBits(value), 2, () -> {
+            constants.writeByte(6);
+            constants.writeDouble(value);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("NameAndType " + name + " " + descriptor, 1, () -> {
+            constants.writeByte(12);
+            constants.writeShort(nameIndex);
+            constants.writeShort(descriptorIndex);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int classIndex = classReference(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant(tag + " " + owner + "." + name + descriptor, 1, () -> {
+            constants.writeByte(tag);
+            constants.writeShort(classIndex);
+            constants.writeShort(nameAndType);
+        });
+    }
+
+    int field(String owner, String name, String descriptor) {
+        return member(9, owner, name, descriptor);
+    }
+
+    int method(String owner, String name, String descriptor) {
+        return member(10, owner, name, descriptor);
+    }
+
+    void addField(int access, String name, String descriptor) {
+        fields.add(new byte[] {
+                (byte) (access >> 8), (byte) access,
+                (byte) (utf8(name) >> 8), (byte) utf8(name),
+                (byte) (utf8(descriptor) >> 8), (byte) utf8(descriptor),
+                0, 0
+        });
+    }
+
+    /**
+     * Adds a method, returning the code to be emitted into it. The first
+     * local slots hold {@code this}, unless the method is static, and the
+     * parameters.
+     */
+    Code addMethod(int access, String name, String descriptor) {
+        int locals = parameterSlots(descriptor) + ((access & ACC_STATIC) != 0 ? 0 : 1);
+        Code code = new Code(access, utf8(name), utf8(descriptor), locals);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(count);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the number of slots taken by a value of the given descriptor on
+     * the operand stack or in the locals.
+     */
+    static int size(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V': return 0;
+            case 'D': case 'J': return 2;
+            default: return 1;
+        }
+    }
+
+    /**
+     * Returns the number of slots taken by the parameters of a method
+     * descriptor.
+     */
+    static int parameterSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            int start = i;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+            slots += start < i - 1 ? 1 : size(descriptor.substring(start, i));
+        }
+        return slots;
+    }
+
+    /**
+     * A position in a method's code which jumps may target before it is
+     * marked.
+     */
+    static final class Label {
+
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+
+    }
+
+    /**
+     * The bytecode of a method, which tracks the depth of the operand stack
+     * to compute the maximum. The depth may be overestimated across
+     * branches, which only costs some unused stack space.
+     */
+    final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[64];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int locals;
+        private int maxLocals;
+        private final List<Label> labels = new ArrayList<>();
+
+        private Code(int access, int name, int descriptor, int locals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.locals = locals;
+            this.maxLocals = locals;
+        }
+
+        private void write(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Emits an instruction without operands, which changes the stack
+         * depth by the given number of slots.
+         */
+        void op(int opcode, int delta) {
+            write(opcode);
+            adjust(delta);
+        }
+
+        void op(int opcode, int operand, int delta) {
+            write(opcode);
+            write(operand);
+            adjust(delta);
+        }
+
+        void op2(int opcode, int operand, int delta) {
+            write(opcode);
+            write(operand >> 8);
+            write(operand);
+            adjust(delta);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, value, 1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op2(SIPUSH, value, 1);
+            } else {
+                ldc(integer(value));
+            }
+        }
+
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0 || value == 1.0) {
+                op(DCONST_0 + (int) value, 2);
+            } else {
+                op2(LDC2_W, doubleConstant(value), 2);
+            }
+        }
+
+        void pushString(String value) {
+            ldc(string(value));
+        }
+
+        private void ldc(int index) {
+            if (index <= 0xFF) {
+                op(LDC, index, 1);
+            } else {
+                op2(LDC_W, index, 1);
+            }
+        }
+
+        /**
+         * Emits the load of a local of the given descriptor.
+         */
+        void load(String descriptor, int slot) {
+            int opcode = descriptor.equals("D") ? DLOAD : isReference(descriptor) ? ALOAD : ILOAD;
+            local(opcode, slot, size(descriptor));
+        }
+
+        void store(String descriptor, int slot) {
+            int opcode = descriptor.equals("D") ? DSTORE : isReference(descriptor) ? ASTORE : ISTORE;
+            local(opcode, slot, -size(descriptor));
+        }
+
+        private void local(int opcode, int slot, int delta) {
+            if (slot > 0xFF) {
+                throw new IllegalStateException("Too many locals in method.");
+            }
+            op(opcode, slot, delta);
+        }
+
+        /**
+         * Allocates local slots for a value of the given descriptor.
+         */
+        int allocate(String descriptor) {
+            int slot = locals;
+            locals += size(descriptor);
+            maxLocals = Math.max(maxLocals, locals);
+            return slot;
+        }
+
+        int getLocals() {
+            return locals;
+        }
+
+        /**
+         * Frees the locals allocated since {@link #getLocals()} returned the
+         * given count.
+         */
+        void setLocals(int locals) {
+            this.locals = locals;
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            String returnType = descriptor.substring(descriptor.indexOf(')') + 1);
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            op2(opcode, method(owner, name, descriptor), size(returnType) - parameterSlots(descriptor) - receiver);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            int index = ClassFile.this.field(owner, name, descriptor);
+            switch (opcode) {
+                case GETSTATIC: op2(opcode, index, size(descriptor)); break;
+                case GETFIELD: op2(opcode, index, size(descriptor) - 1); break;
+                default: op2(opcode, index, -size(descriptor) - 1); break;
+            }
+        }
+
+        void type(int opcode, String internalName, int delta) {
+            op2(opcode, classReference(internalName), delta);
+        }
+
+        /**
+         * Emits a jump to the label, which pops the given number of slots.
+         */
+        void jump(int opcode, Label label, int pops) {
+            label.jumps.add(length);
+            op2(opcode, 0, -pops);
+        }
+
+        void mark(Label label) {
+            label.position = length;
+        }
+
+        /**
+         * Sets the stack depth at a point only reached by jumps, such as the
+         * start of an else branch.
+         */
+        void setStack(int stack) {
+            this.stack = stack;
+        }
+
+        int getStack() {
+            return stack;
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            if (length > 0x7FFF) {
+                throw new IllegalStateException("Method too large.");
+            }
+            for (Label label : labels) {
+                for (int jump : label.jumps) {
+                    int offset = label.position - jump;
+                    code[jump + 1] = (byte) (offset >> 8);
+                    code[jump + 2] = (byte) offset;
+                }
+            }
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        /**
+         * Creates a label in this method.
+         */
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+    }
+
+    static boolean isReference(String descriptor) {
+        return descriptor.charAt(0) == 'L' || descriptor.charAt(0) == '[';
+    }
+
+}
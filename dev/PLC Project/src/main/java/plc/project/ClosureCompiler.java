@@ -0,0 +1,677 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes ASTs with the same results as the {@link Interpreter}, but by first
+ * compiling them into a tree of closures. Operators, callees, and variables
+ * are resolved once when a node is compiled, so running a function body or a
+ * loop does not dispatch through {@link Ast.Visitor} or compare operator
+ * strings again.
+ *
+ * Variables declared inside a function or block live in slots of a frame
+ * array allocated per call, which are cleared when their block exits so that
+ * redeclaring a variable in the same block still fails as it does with a
+ * fresh {@link Scope}. As in the interpreter, a name a function has not
+ * declared is found in the variables of its callers, searching the variables
+ * visible where each call on the stack was made, innermost first. Globals and
+ * any variables of the parent scope are then looked up by name on first use
+ * and cached.
+ *
+ * Unlike the interpreter, a function's own parameters and variables are local
+ * to each call rather than defined in the scope of its caller. A function can
+ * be called more than once from the same block, and once it returns its
+ * variables neither remain visible to nor hide those of the caller.
+ */
+public final class ClosureCompiler {
+
+    private static final Environment.PlcObject TRUE = Environment.create(true);
+    private static final Environment.PlcObject FALSE = Environment.create(false);
+
+    private final Scope scope;
+    private Caller callers = null;
+
+    public ClosureCompiler(Scope parent) {
+        scope = Interpreter.builtins(parent);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Compiles and runs the given AST, returning the same value as {@link
+     * Interpreter#visit(Ast)} apart from the scoping of a function's own
+     * variables described above. Functions are compiled once when they are
+     * defined and their compiled bodies are run on each call.
+     */
+    public Environment.PlcObject execute(Ast ast) {
+        Compiler compiler = new Compiler();
+        Code code = compiler.visit(ast);
+        return code.execute(new Environment.PlcObject[compiler.frameSize]);
+    }
+
+    /**
+     * A compiled node, which runs against the frame of the enclosing function
+     * and returns the node's value, or {@link Environment#NIL} for statements
+     * other than {@code RETURN}.
+     */
+    @FunctionalInterface
+    private interface Code {
+
+        Environment.PlcObject execute(Environment.PlcObject[] frame);
+
+    }
+
+    /**
+     * A call in progress, with the frame of the function that made it and the
+     * slots of the variables visible where it was made.
+     */
+    private static final class Caller {
+
+        private final Environment.PlcObject[] frame;
+        private final Map<String, int[]> visible;
+        private final Caller parent;
+
+        private Caller(Environment.PlcObject[] frame, Map<String, int[]> visible, Caller parent) {
+            this.frame = frame;
+            this.visible = visible;
+            this.parent = parent;
+        }
+
+        /**
+         * Returns the first non-empty slot of a variable with this name, or
+         * -1 if there is none.
+         */
+        private int slot(String name) {
+            int[] slots = visible.get(name);
+            if (slots != null) {
+                for (int slot : slots) {
+                    if (frame[slot] != null) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A variable which is not in a slot of the current frame, found in the
+     * callers or else the scope. The variable in the scope is looked up on
+     * first use.
+     */
+    private final class Global {
+
+        private final String name;
+        private Environment.Variable variable;
+
+        private Global(String name) {
+            this.name = name;
+        }
+
+        private Environment.Variable get() {
+            if (variable == null) {
+                variable = scope.lookupVariable(name);
+            }
+            return variable;
+        }
+
+        private Environment.PlcObject load() {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    return caller.frame[slot];
+                }
+            }
+            return get().getValue();
+        }
+
+        private void store(Environment.PlcObject value) {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    caller.frame[slot] = value;
+                    return;
+                }
+            }
+            mutable().setValue(value);
+        }
+
+        /**
+         * Returns the list to assign an element of, which must be mutable if
+         * it is in the scope.
+         */
+        private Environment.PlcObject list() {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    return caller.frame[slot];
+                }
+            }
+            return mutable().getValue();
+        }
+
+        private Environment.Variable mutable() {
+            Environment.Variable variable = get();
+            if (!variable.getMutable()) {
+                throw new RuntimeException("Not Mutable");
+            }
+            return variable;
+        }
+
+    }
+
+    /**
+     * A function in the scope, looked up on first call since a function may be
+     * called by a function defined before it. While it runs, the variables
+     * visible at the call are added to the callers.
+     */
+    private final class Callee {
+
+        private final String name;
+        private final int arity;
+        private final Map<String, int[]> visible;
+        private Environment.Function function;
+
+        private Callee(String name, int arity, Map<String, int[]> visible) {
+            this.name = name;
+            this.arity = arity;
+            this.visible = visible;
+        }
+
+        private Environment.PlcObject invoke(Code[] arguments, Environment.PlcObject[] frame) {
+            List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+            for (Code argument : arguments) {
+                values.add(argument.execute(frame));
+            }
+            if (function == null) {
+                function = scope.lookupFunction(name, arity);
+            }
+            if (visible.isEmpty()) {
+                return function.invoke(values);
+            }
+            Caller outer = callers;
+            callers = new Caller(frame, visible, outer);
+            try {
+                return function.invoke(values);
+            } finally {
+                callers = outer;
+            }
+        }
+
+    }
+
+    /**
+     * Compiles nodes against the blocks of the function being compiled. Each
+     * block maps the names declared in it so far to their slots. Outside of a
+     * function there are no blocks until one is entered, and declarations
+     * define variables in the scope instead.
+     */
+    private final class Compiler implements Ast.Visitor<Code> {
+
+        private List<Map<String, Integer>> blocks = new ArrayList<>();
+        private int slots = 0;
+        private int frameSize = 0;
+
+        private int declare(String name) {
+            Map<String, Integer> block = blocks.get(blocks.size() - 1);
+            Integer slot = block.get(name);
+            if (slot == null) {
+                slot = slots++;
+                block.put(name, slot);
+                frameSize = Math.max(frameSize, slots);
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the slots of the variables with this name that are visible
+         * here, innermost first. A slot is empty at runtime if its declaration
+         * was skipped, for example in another case of a switch, in which case
+         * the next one applies.
+         */
+        private int[] resolve(String name) {
+            int[] candidates = new int[blocks.size()];
+            int count = 0;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Integer slot = blocks.get(i).get(name);
+                if (slot != null) {
+                    candidates[count++] = slot;
+                }
+            }
+            return Arrays.copyOf(candidates, count);
+        }
+
+        /**
+         * Returns the slots of every variable visible here, for a function
+         * called here to find the variables of its caller.
+         */
+        private Map<String, int[]> visible() {
+            Map<String, int[]> visible = new HashMap<>();
+            for (Map<String, Integer> block : blocks) {
+                for (String name : block.keySet()) {
+                    visible.computeIfAbsent(name, this::resolve);
+                }
+            }
+            return visible;
+        }
+
+        /**
+         * Compiles statements as a block with a new scope. The slots it
+         * declares are cleared when it exits, since they are reused by the
+         * enclosing block and the next time the block is entered. A block
+         * only exits early by throwing out of the function, whose frame is
+         * then discarded.
+         */
+        private Code block(List<? extends Ast> statements) {
+            int start = slots;
+            blocks.add(new HashMap<>());
+            Code[] codes = compile(statements);
+            int end = start + blocks.remove(blocks.size() - 1).size();
+            slots = start;
+            return frame -> {
+                for (Code code : codes) {
+                    code.execute(frame);
+                }
+                Arrays.fill(frame, start, end, null);
+                return Environment.NIL;
+            };
+        }
+
+        private Code[] compile(List<? extends Ast> asts) {
+            Code[] codes = new Code[asts.size()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = visit(asts.get(i));
+            }
+            return codes;
+        }
+
+        @Override
+        public Code visit(Ast.Source ast) {
+            Code[] globals = compile(ast.getGlobals());
+            Code[] functions = compile(ast.getFunctions());
+            return frame -> {
+                for (Code global : globals) {
+                    global.execute(frame);
+                }
+                for (Code function : functions) {
+                    function.execute(frame);
+                }
+                List<Environment.PlcObject> arguments = new ArrayList<>();
+                try {
+                    return scope.lookupFunction("main", 0).invoke(arguments);
+                } catch (RuntimeException e) {
+                    return scope.lookupFunction("main", -1).invoke(arguments);
+                }
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Global ast) {
+            String name = ast.getName();
+            boolean mutable = ast.getMutable();
+            Code value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : null;
+            return frame -> {
+                if (value != null) {
+                    scope.defineVariable(name, mutable, value.execute(frame));
+                } else if (mutable) {
+                    scope.defineVariable(name, true, Environment.NIL);
+                } else {
+                    throw new RuntimeException("Immutable empty value");
+                }
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Function ast) {
+            List<Map<String, Integer>> outerBlocks = blocks;
+            int outerSlots = slots;
+            int outerFrameSize = frameSize;
+            blocks = new ArrayList<>();
+            slots = 0;
+            frameSize = 0;
+            blocks.add(new HashMap<>());
+            int[] parameters = new int[ast.getParameters().size()];
+            int duplicate = -1;
+            for (int i = 0; i < parameters.length; i++) {
+                int before = slots;
+                parameters[i] = declare(ast.getParameters().get(i));
+                if (slots == before && duplicate < 0) {
+                    duplicate = i;
+                }
+            }
+            Code[] statements = compile(ast.getStatements());
+            int size = frameSize;
+            blocks = outerBlocks;
+            slots = outerSlots;
+            frameSize = outerFrameSize;
+
+            String name = ast.getName();
+            int first = duplicate;
+            java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> body = arguments -> {
+                Environment.PlcObject[] frame = new Environment.PlcObject[size];
+                for (int i = 0; i < parameters.length; i++) {
+                    Environment.PlcObject argument = arguments.get(i);
+                    if (i == first) {
+                        throw new RuntimeException("The variable " + ast.getParameters().get(i) + " is already defined in this scope.");
+                    }
+                    frame[parameters[i]] = argument;
+                }
+                if (statements.length == 0) {
+                    return Environment.NIL;
+                }
+                for (int i = 0; i < statements.length - 1; i++) {
+                    statements[i].execute(frame);
+                }
+                try {
+                    return Environment.create(statements[statements.length - 1].execute(frame).getValue());
+                } catch (RuntimeException e) {
+                    return Environment.NIL;
+                }
+            };
+            return frame -> {
+                scope.defineFunction(name, parameters.length, body);
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Expression ast) {
+            if (!(ast.getExpression() instanceof Ast.Expression.Function)) {
+                return frame -> {
+                    Interpreter.requireType(Ast.Expression.Function.class, Environment.create(ast.getExpression()));
+                    return Environment.NIL;
+                };
+            }
+            Ast.Expression.Function function = (Ast.Expression.Function) ast.getExpression();
+            Code[] arguments = compile(function.getArguments());
+            Callee callee = new Callee(function.getName(), arguments.length, visible());
+            return frame -> {
+                callee.invoke(arguments, frame);
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Declaration ast) {
+            String name = ast.getName();
+            Code value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : frame -> Environment.NIL;
+            if (blocks.isEmpty()) {
+                return frame -> {
+                    scope.defineVariable(name, true, value.execute(frame));
+                    return Environment.NIL;
+                };
+            }
+            int slot = declare(name);
+            return frame -> {
+                Environment.PlcObject result = value.execute(frame);
+                if (frame[slot] != null) {
+                    throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+                }
+                frame[slot] = result;
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                return frame -> {
+                    Interpreter.requireType(Ast.Expression.Access.class, Environment.create(ast.getReceiver()));
+                    return Environment.NIL;
+                };
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+            Code value = visit(ast.getValue());
+            int[] candidates = resolve(receiver.getName());
+            Global global = new Global(receiver.getName());
+            if (!receiver.getOffset().isPresent() || !(receiver.getOffset().get() instanceof Ast.Expression.Literal)) {
+                return frame -> {
+                    Environment.PlcObject result = value.execute(frame);
+                    for (int slot : candidates) {
+                        if (frame[slot] != null) {
+                            frame[slot] = result;
+                            return Environment.NIL;
+                        }
+                    }
+                    global.store(result);
+                    return Environment.NIL;
+                };
+            }
+            Object literal = ((Ast.Expression.Literal) receiver.getOffset().get()).getLiteral();
+            Integer index;
+            try {
+                index = new BigInteger(literal.toString()).intValue();
+            } catch (RuntimeException e) {
+                index = null;
+            }
+            Integer offset = index;
+            return frame -> {
+                Environment.PlcObject result = value.execute(frame);
+                Environment.PlcObject list = null;
+                for (int slot : candidates) {
+                    if (frame[slot] != null) {
+                        list = frame[slot];
+                        break;
+                    }
+                }
+                if (list == null) {
+                    list = global.list();
+                }
+                @SuppressWarnings("unchecked")
+                List<Object> values = (List<Object>) list.getValue();
+                values.set(offset != null ? offset : new BigInteger(literal.toString()).intValue(), result.getValue());
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.If ast) {
+            Code condition = visit(ast.getCondition());
+            Code thenStatements = block(ast.getThenStatements());
+            Code elseStatements = block(ast.getElseStatements());
+            return frame -> {
+                if (Interpreter.requireType(Boolean.class, condition.execute(frame))) {
+                    thenStatements.execute(frame);
+                } else if (!Interpreter.requireType(Boolean.class, condition.execute(frame))) {
+                    elseStatements.execute(frame);
+                }
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Switch ast) {
+            Code condition = visit(ast.getCondition());
+            int start = slots;
+            blocks.add(new HashMap<>());
+            List<Ast.Statement.Case> cases = ast.getCases();
+            Code[] values = new Code[cases.size()];
+            Code[] statements = new Code[cases.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = cases.get(i).getValue().isPresent() ? visit(cases.get(i).getValue().get()) : null;
+                statements[i] = visit(cases.get(i));
+            }
+            int end = start + blocks.remove(blocks.size() - 1).size();
+            slots = start;
+            return frame -> {
+                char value = Interpreter.requireType(Character.class, condition.execute(frame));
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == null) {
+                        statements[i].execute(frame);
+                    } else if (value == Interpreter.requireType(Character.class, values[i].execute(frame))) {
+                        statements[i].execute(frame);
+                        break;
+                    }
+                }
+                Arrays.fill(frame, start, end, null);
+                return Environment.NIL;
+            };
+        }
+
+        /**
+         * Compiles the statements of a case in the enclosing block, which is
+         * shared by all cases of a switch.
+         */
+        @Override
+        public Code visit(Ast.Statement.Case ast) {
+            Code[] statements = compile(ast.getStatements());
+            return frame -> {
+                for (Code statement : statements) {
+                    statement.execute(frame);
+                }
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.While ast) {
+            Code condition = visit(ast.getCondition());
+            Code statements = block(ast.getStatements());
+            return frame -> {
+                while (Interpreter.requireType(Boolean.class, condition.execute(frame))) {
+                    statements.execute(frame);
+                }
+                return Environment.NIL;
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Return ast) {
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Code visit(Ast.Statement.Error ast) {
+            return frame -> {
+                throw new RuntimeException("Cannot execute a syntax error: " + ast.getMessage() + ".");
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Expression.Literal ast) {
+            Environment.PlcObject value = ast.getLiteral() == null ? Environment.NIL : Environment.create(ast.getLiteral());
+            return frame -> value;
+        }
+
+        @Override
+        public Code visit(Ast.Expression.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        /**
+         * Compiles a binary expression for its operator. As in the
+         * interpreter, both operands are always evaluated and an operand that
+         * fails evaluates to {@link Environment#NIL}, and mismatched operand
+         * types fail with the error of the last type tried.
+         */
+        @Override
+        public Code visit(Ast.Expression.Binary ast) {
+            Code left = visit(ast.getLeft());
+            Code right = visit(ast.getRight());
+            switch (ast.getOperator()) {
+                case "&&":
+                    return frame -> truth(Operators.and(value(left, frame), value(right, frame)));
+                case "||":
+                    return frame -> truth(Operators.or(value(left, frame), value(right, frame)));
+                case "<":
+                    return frame -> truth(Operators.compare(value(left, frame), value(right, frame), 1));
+                case ">":
+                    return frame -> truth(Operators.compare(value(left, frame), value(right, frame), -1));
+                case "==":
+                    return frame -> truth(Operators.compare(value(left, frame), value(right, frame), 0));
+                case "+":
+                    return frame -> Environment.create(Operators.add(value(left, frame), value(right, frame)));
+                case "-":
+                    return frame -> Environment.create(Operators.subtract(value(left, frame), value(right, frame)));
+                case "*":
+                    return frame -> Environment.create(Operators.multiply(value(left, frame), value(right, frame)));
+                case "/":
+                    return frame -> Environment.create(Operators.divide(value(left, frame), value(right, frame)));
+                case "^":
+                    return frame -> Environment.create(Operators.power(value(left, frame), value(right, frame)));
+                default:
+                    return frame -> {
+                        value(left, frame);
+                        value(right, frame);
+                        throw new RuntimeException("Not a valid binary operation");
+                    };
+            }
+        }
+
+        @Override
+        public Code visit(Ast.Expression.Access ast) {
+            int[] candidates = resolve(ast.getName());
+            Global global = new Global(ast.getName());
+            Code variable = frame -> {
+                for (int slot : candidates) {
+                    if (frame[slot] != null) {
+                        return frame[slot];
+                    }
+                }
+                return global.load();
+            };
+            if (!ast.getOffset().isPresent() || !(ast.getOffset().get() instanceof Ast.Expression.Literal)
+                    || !(((Ast.Expression.Literal) ast.getOffset().get()).getLiteral() instanceof BigInteger)) {
+                return variable;
+            }
+            int index = ((BigInteger) ((Ast.Expression.Literal) ast.getOffset().get()).getLiteral()).intValue();
+            return frame -> {
+                Environment.PlcObject list = variable.execute(frame);
+                try {
+                    return Environment.create(((List<?>) list.getValue()).get(index));
+                } catch (RuntimeException e) {
+                    return list;
+                }
+            };
+        }
+
+        @Override
+        public Code visit(Ast.Expression.Function ast) {
+            Code[] arguments = compile(ast.getArguments());
+            Callee callee = new Callee(ast.getName(), arguments.length, visible());
+            return frame -> Environment.create(callee.invoke(arguments, frame).getValue());
+        }
+
+        @Override
+        public Code visit(Ast.Expression.PlcList ast) {
+            Object[] values = new Object[ast.getValues().size()];
+            for (int i = 0; i < values.length; i++) {
+                Ast.Expression value = ast.getValues().get(i);
+                if (!(value instanceof Ast.Expression.Literal)) {
+                    return frame -> {
+                        Interpreter.requireType(Ast.Expression.Literal.class, Environment.create(value));
+                        return Environment.NIL;
+                    };
+                }
+                values[i] = ((Ast.Expression.Literal) value).getLiteral();
+            }
+            return frame -> Environment.create(new ArrayList<>(Arrays.asList(values)));
+        }
+
+    }
+
+    /**
+     * Evaluates an operand of a binary expression, which is nil if it fails.
+     */
+    private static Object value(Code code, Environment.PlcObject[] frame) {
+        try {
+            return code.execute(frame).getValue();
+        } catch (RuntimeException e) {
+            return Environment.NIL.getValue();
+        }
+    }
+
+    private static Environment.PlcObject truth(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+}
@@ -186,6 +186,11 @@ public final class Generator implements Ast.Visitor<Void> {
         return null; //TODO
     }
 
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        throw new RuntimeException("Cannot generate a syntax error: " + ast.getMessage() + ".");
+    }
+
     @Override
     public Void visit(Ast.Expression.Literal ast) {
         if(typeis(Environment.Type.STRING, ast.getType())){print("\"", ast.getLiteral(), "\"");}
@@ -7,10 +7,28 @@ import java.util.*;
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
+    private Ast.Function function = null;
+    private Environment.Variable[] frame = null;
 
     public Interpreter(Scope parent) {
-        scope = new Scope(parent);
+        scope = builtins(parent);
+    }
+
+    /**
+     * Returns a new scope to run programs in, whose parent holds the built-in
+     * functions so that a program can define its own {@code main}.
+     */
+    static Scope builtins(Scope parent) {
+        Scope builtins = new Scope(parent);
+        defineBuiltins(builtins);
+        return new Scope(builtins);
+    }
 
+    /**
+     * Defines the built-in functions shared by every execution mode in the
+     * given scope.
+     */
+    static void defineBuiltins(Scope scope) {
         scope.defineFunction("print", 1, args -> {
             System.out.println(args.get(0).getValue());
             return Environment.NIL;
@@ -48,7 +66,6 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             }
             return Environment.create(res);
         });
-
     }
 
     public Scope getScope() {
@@ -85,19 +102,28 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Function ast) {
 
+        int frameSize = Resolver.resolve(ast);
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
-            for (int i = 0; i < ast.getParameters().size(); i++)
-            scope.defineVariable(ast.getParameters().get(i), true, args.get(i));
-            for(int i = 0; i < ast.getStatements().size() -1 ; i++){
-            visit(ast.getStatements().get(i));
-            }
-            try{
-                return Environment.create(visit(ast.getStatements().get(ast.getStatements().size() - 1)).getValue());
-            }
-            catch(RuntimeException e){
-                return Environment.NIL;
+            Ast.Function caller = function;
+            Environment.Variable[] callerFrame = frame;
+            function = ast;
+            frame = new Environment.Variable[frameSize];
+            try {
+                for (int i = 0; i < ast.getParameters().size(); i++)
+                frame[i] = scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), Environment.Type.ANY, true, args.get(i));
+                for(int i = 0; i < ast.getStatements().size() -1 ; i++){
+                visit(ast.getStatements().get(i));
+                }
+                try{
+                    return Environment.create(visit(ast.getStatements().get(ast.getStatements().size() - 1)).getValue());
+                }
+                catch(RuntimeException e){
+                    return Environment.NIL;
+                }
+            } finally {
+                function = caller;
+                frame = callerFrame;
             }
-
         });
 
             return Environment.NIL;
@@ -125,13 +151,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         Optional optional = ast.getValue();
         boolean present = optional.isPresent();
 
-        if(present){
-            Ast.Expression exp = (Ast.Expression) optional.get();
-            scope.defineVariable(ast.getName(), true ,visit(exp));
-
-        }
-        else{
-            scope.defineVariable(ast.getName(), true , Environment.NIL);
+        Environment.PlcObject value = present ? visit((Ast.Expression) optional.get()) : Environment.NIL;
+        Resolver.Coordinate coordinate = ast.getCoordinate();
+        if (coordinate == null || coordinate.getFunction() != function) {
+            scope.defineVariable(ast.getName(), true, value);
+        } else if (coordinate.isFrame()) {
+            frame[coordinate.getSlot()] = scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.ANY, true, value);
+        } else {
+            scope.declare(coordinate.getSlot(), ast.getName(), value);
         }
 
         return Environment.NIL;
@@ -143,16 +170,17 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
         Ast.Expression.Access name = requireType(Ast.Expression.Access.class, Environment.create(ast.getReceiver()));
         Environment.PlcObject lit = visit(ast.getValue());
-            if(getScope().lookupVariable(name.getName()).getMutable()){
+        Environment.Variable variable = lookup(name);
+            if(variable.getMutable()){
 
-                    if(name.getOffset().isPresent() && name.getOffset().get().getClass().getName().equals("plc.project.Ast$Expression$Literal")){
-                        List ject = (List) getScope().lookupVariable(name.getName()).getValue().getValue();
+                    if(name.getOffset().isPresent() && name.getOffset().get() instanceof Ast.Expression.Literal){
+                        List ject = (List) variable.getValue().getValue();
                         Ast.Expression.Literal off = (Ast.Expression.Literal) name.getOffset().get();
                         ject.set(new BigInteger(off.getLiteral().toString()).intValue(), lit.getValue());
                     return Environment.NIL;
                     }
                     else{
-                        getScope().lookupVariable(name.getName()).setValue(Environment.create(lit.getValue()));
+                        variable.setValue(Environment.create(lit.getValue()));
                         return Environment.NIL;
                     }
                 }
@@ -229,16 +257,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.While ast) {
+        Scope body = new Scope(scope);
         while(requireType(Boolean.class, visit(ast.getCondition()))){
             try{
-                scope= new Scope(scope);
+                body.clear();
+                scope = body;
                 for(Ast.Statement statement : ast.getStatements()){
                     visit(statement);
                 }
             }
             //catch(){}
             finally{
-                scope = scope.getParent();
+                scope = body.getParent();
             }
         }
             return Environment.NIL;
@@ -250,6 +280,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return visit(ast.getValue()); //TODO
     }
 
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Error ast) {
+        throw new RuntimeException("Cannot execute a syntax error: " + ast.getMessage() + ".");
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Expression.Literal ast) {
         if(ast.getLiteral() == null){
@@ -414,22 +449,37 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Access ast) {
+        Environment.PlcObject value = lookup(ast).getValue();
         if (ast.getOffset().isPresent()){
             try{
                 Ast.Expression.Literal lit = requireType(Ast.Expression.Literal.class, Environment.create(ast.getOffset().get())); //is the 1 in list[1]
-                Object list = getScope().lookupVariable(ast.getName()).getValue().getValue();
-                return Environment.create( ((List)list).get(((BigInteger) lit.getLiteral()).intValue()));
+                return Environment.create( ((List)value.getValue()).get(((BigInteger) lit.getLiteral()).intValue()));
             }
-            catch(Exception e){return getScope().lookupVariable(ast.getName()).getValue();}
+            catch(Exception e){return value;}
+
+        }
+        return value;
+    }//Done Access
 
+    /**
+     * Finds the variable an access refers to, using the coordinate from the
+     * {@link Resolver} while its function is running unless a scope it would
+     * skip over has had a variable defined by name.
+     */
+    private Environment.Variable lookup(Ast.Expression.Access ast) {
+        Resolver.Coordinate coordinate = ast.getCoordinate();
+        if (coordinate == null || coordinate.getFunction() != function) {
+            return scope.lookupVariable(ast.getName());
         }
-        else{
-            if(getScope().lookupVariable(ast.getName()) != null){
-                return getScope().lookupVariable(ast.getName()).getValue();
+        Scope current = scope;
+        for (int i = 0; i < coordinate.getDepth(); i++) {
+            if (current.isDynamic()) {
+                return scope.lookupVariable(ast.getName());
             }
-            throw new RuntimeException("Could not find Variable");
+            current = current.getParent();
         }
-    }//Done Access
+        return coordinate.isFrame() ? frame[coordinate.getSlot()] : current.getSlot(coordinate.getSlot());
+    }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
@@ -461,7 +511,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
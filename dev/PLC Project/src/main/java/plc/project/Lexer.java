@@ -1,7 +1,24 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static plc.project.Token.Type.*;
 
@@ -21,25 +38,142 @@ import static plc.project.Token.Type.*;
 
 
 public final class Lexer {
-    String identifier = "[A-Za-z0-9_-]";
-    String identifier1 = "[A-Za-z@]";
-    String integer = "[0-9-]";
-    String integer19 = "[0-9]";
-    String decimal = "[.]";
-    String apostrophe = "'";
-    String character = "[^ \b\n\r\t]";
-    String string = "[^\"\b\n\r\t]";
-    String bnrt = "[bnrt\"]";
-    String quote = "\"";
-    String escape = "\\\\";
-    String operator = "[!=?&|]";
-    String notwhitespace = "[^ \b\n\r\t]";
-    String whitespace = "[ \b\n\r\t]";
+
+    /**
+     * Selects how the lexer classifies characters. {@link #TABLE} looks each
+     * character up in a table computed once from the patterns in
+     * {@link CharClass}, while {@link #REGEX} matches every character against
+     * those patterns directly and is kept for A/B comparison.
+     */
+    public enum Engine {
+        TABLE,
+        REGEX
+    }
+
+    /**
+     * The character classes used by the lex methods, along with the regex
+     * each one was originally written as.
+     */
+    private enum CharClass {
+        IDENTIFIER("[A-Za-z0-9_-]"),
+        IDENTIFIER_START("[A-Za-z@]"),
+        INTEGER("[0-9-]"),
+        DIGIT("[0-9]"),
+        ZERO("0"),
+        DECIMAL("[.]"),
+        APOSTROPHE("'"),
+        CHARACTER("[^ \b\n\r\t]"),
+        STRING("[^\"\b\n\r\t]"),
+        BNRT("[bnrt\"]"),
+        QUOTE("\""),
+        ESCAPE("\\\\"),
+        OPERATOR("[!=?&|]"),
+        NOT_WHITESPACE("[^ \b\n\r\t]"),
+        WHITESPACE("[ \b\n\r\t]");
+
+        private final String regex;
+        private final int mask = 1 << ordinal();
+
+        CharClass(String regex) {
+            this.regex = regex;
+        }
+
+    }
+
+    /**
+     * Class masks for every ASCII character, built by running each pattern
+     * once against each character so the table can never disagree with
+     * {@link Engine#REGEX}. None of the patterns name a non-ASCII character,
+     * so all of those share the single {@link #NON_ASCII} mask.
+     */
+    private static final int[] ASCII = new int[128];
+    private static final int NON_ASCII;
+
+    /**
+     * The smallest chunk of input {@link #lexParallel(ForkJoinPool)} will
+     * hand to a separate task; anything shorter is lexed sequentially.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 16;
+
+    static {
+        for (char c = 0; c < ASCII.length; c++) {
+            ASCII[c] = computeMask(c);
+        }
+        NON_ASCII = computeMask('\u0080');
+    }
+
     private final CharStream chars;
+    private final Engine engine;
+    private final SymbolTable symbols;
 
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(input, Engine.TABLE);
+    }
+
+    public Lexer(String input, Engine engine) {
+        this(new CharStream(input), engine, new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer which interns identifiers into an existing symbol table,
+     * such as that of the lexer which produced the tokens given to
+     * {@link #relex(List, int, int, int)}.
+     */
+    public Lexer(String input, SymbolTable symbols) {
+        this(new CharStream(input), Engine.TABLE, symbols);
+    }
+
+    /**
+     * Creates a lexer which reads its input incrementally from the reader
+     * instead of requiring the whole source up front.
+     */
+    public Lexer(Reader reader) {
+        this(new CharStream(reader), Engine.TABLE, new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer which decodes UTF-8 input incrementally from the channel.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Creates a lexer over UTF-8 encoded bytes, such as a memory-mapped file.
+     * Tokens refer back into the input instead of copying their text, which
+     * is only materialized when {@link Token#getLiteral()} is called. Pure
+     * ASCII input is read straight out of the buffer; anything else is
+     * decoded once up front so that indices remain character offsets.
+     */
+    public Lexer(ByteBuffer buffer) {
+        this(new CharStream(AsciiBuffer.isAscii(buffer)
+                ? new AsciiBuffer(buffer)
+                : StandardCharsets.UTF_8.decode(buffer.duplicate())), Engine.TABLE, new SymbolTable());
+    }
+
+    /**
+     * Memory-maps the file at the given path and creates a lexer over it as
+     * with {@link #Lexer(ByteBuffer)}. The mapping stays valid after the
+     * channel is closed.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private Lexer(CharStream chars, Engine engine, SymbolTable symbols) {
+        this.chars = chars;
+        this.engine = engine;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns the table which identifiers lexed so far have been interned in.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
     }
 
     /**
@@ -47,31 +181,365 @@ public final class Lexer {
      * whitespace where appropriate.
      */
     public List<Token> lex() {//calls lextoken
-        //filters white space and calls lextoken on the characters that are not the whitespace
         List<Token> tokens = new ArrayList<>();
-        Token token = null;
-        while(chars.has(0)){
-            if(peek(whitespace)){
-                while(match(whitespace)){};
-                chars.skip();
+        while(hasToken()){
+            tokens.add(lexToken());
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but instead of
+     * stopping at the first error each {@link ParseException} is added to
+     * {@code errors} and lexing resumes at the next resync point, so that all
+     * errors in the input are found in one pass. The invalid text is dropped
+     * from the tokens.
+     *
+     * A bad string resyncs after its closing quote, or at the end of the line
+     * if it is unterminated, since strings cannot span lines. Anything else
+     * resyncs at the next whitespace.
+     */
+    public List<Token> lex(List<ParseException> errors) {
+        List<Token> tokens = new ArrayList<>();
+        while(hasToken()){
+            int start = chars.getIndex();
+            try {
+                tokens.add(lexToken());
+            } catch (ParseException e) {
+                errors.add(e);
+                recover(start);
             }
-            if(chars.has(0))
-            {token = lexToken();}
-            if(peek(whitespace)){
-                while(match(whitespace)){};
-            chars.skip();
+        }
+        return tokens;
+    }
+
+    /**
+     * Skips to the resync point for a token starting at {@code start} which
+     * failed to lex, always moving past at least one character.
+     */
+    private void recover(int start) {
+        boolean string = chars.get(start - chars.getIndex()) == '"';
+        if (chars.getIndex() == start) {
+            chars.advance();
+        }
+        while (chars.has(0)) {
+            char c = chars.get(0);
+            if (string ? c == '\n' : is(c, CharClass.WHITESPACE)) {
+                break;
             }
-            if(token == null){
+            chars.advance();
+            if (string && c == '"') {
                 break;
             }
-            else{
-                tokens.add(token);
+        }
+        chars.skip();
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but stores the tokens
+     * in a {@link TokenBuffer} over the input rather than as token objects.
+     * This requires the whole input to be in memory, so it is not supported
+     * for lexers created from a reader or channel.
+     */
+    public TokenBuffer lexBuffer() {
+        if (chars.reader != null) {
+            throw new IllegalStateException("A token buffer requires the whole input in memory.");
+        }
+        TokenBuffer buffer = new TokenBuffer(chars.input, symbols);
+        while(hasToken()){
+            Token token = lexToken();
+            buffer.add(token.getType(), token.getIndex(), token.getLength(), token.getSymbol());
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()} using the common
+     * fork/join pool.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, splitting it into
+     * chunks which are lexed as separate tasks on the given pool.
+     *
+     * Chunks are only split at whitespace which {@link #boundary(int, int, int)}
+     * has checked is outside of any string or character literal, so every
+     * chunk starts where the sequential lexer would start a token. Identifiers
+     * are re-interned in order while the chunks are stitched together, so the
+     * tokens, symbol ids, and any {@link ParseException} are exactly those of
+     * {@link #lex()}. This requires the whole input to be in memory.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        if (chars.reader != null) {
+            throw new IllegalStateException("Parallel lexing requires the whole input in memory.");
+        }
+        List<Integer> bounds = split(chars.getIndex(), chars.end, pool.getParallelism() * 4);
+        if (bounds.size() <= 2) {
+            return lex();
+        }
+        List<Lexer> lexers = new ArrayList<>();
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            Lexer lexer = new Lexer(new CharStream(chars.input, bounds.get(i), bounds.get(i + 1)), engine, new SymbolTable());
+            lexers.add(lexer);
+            tasks.add(pool.submit(() -> lexer.lex()));
+        }
+        List<Token> tokens = new ArrayList<>();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                List<Token> chunk = join(tasks.get(i));
+                SymbolTable chunkSymbols = lexers.get(i).symbols;
+                int[] remap = new int[chunkSymbols.size()];
+                for (int id = 0; id < remap.length; id++) {
+                    remap[id] = symbols.intern(chunkSymbols.getName(id));
+                }
+                for (Token token : chunk) {
+                    if (token.getSymbol() == SymbolTable.NONE) {
+                        tokens.add(token);
+                    } else {
+                        tokens.add(new Token(symbols, remap[token.getSymbol()], token.getIndex()));
+                    }
+                }
+            }
+        } finally {
+            for (ForkJoinTask<List<Token>> task : tasks) {
+                task.cancel(false);
             }
         }
-        
+        chars.index = chars.end;
+        chars.skip();
         return tokens;
     }
 
+    private static List<Token> join(ForkJoinTask<List<Token>> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the bounds of the chunks to lex between {@code from} and
+     * {@code to}, aiming for the given number of chunks but none smaller than
+     * {@link #PARALLEL_CHUNK_SIZE}.
+     */
+    private List<Integer> split(int from, int to, int parts) {
+        int size = Math.max(PARALLEL_CHUNK_SIZE, (to - from) / parts);
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(from);
+        int boundary = from;
+        while (to - boundary > size) {
+            boundary = boundary(boundary, boundary + size, to);
+            if (boundary == to) {
+                break;
+            }
+            bounds.add(boundary);
+        }
+        bounds.add(to);
+        return bounds;
+    }
+
+    /**
+     * Returns the first whitespace at or after {@code target} which is not
+     * inside a literal, or {@code to} if there is none.
+     *
+     * Only strings may contain whitespace, and no literal can span a line, so
+     * the quote state is known at {@code known} (a previous boundary) and at
+     * the start of every line. The scan starts from the nearest of these and
+     * follows literals with the same rules as {@link #lexString()} and
+     * {@link #lexCharacter()}. If it finds an invalid literal the sequential
+     * lexer would fail there anyway, so the rest of the input is left in one
+     * chunk to report that error.
+     */
+    private int boundary(int known, int target, int to) {
+        CharSequence input = chars.input;
+        int position = target;
+        while (position > known && input.charAt(position - 1) != '\n') {
+            position--;
+        }
+        while (position < to) {
+            char c = input.charAt(position);
+            if (c == '"') {
+                position = skipString(input, position, to);
+            } else if (c == '\'') {
+                position = skipCharacter(input, position, to);
+            } else if (position >= target && is(c, CharClass.WHITESPACE)) {
+                return position;
+            } else {
+                position++;
+            }
+            if (position < 0) {
+                return to;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Returns the index after the string literal starting at the given
+     * position, or -1 if it is invalid.
+     */
+    private static int skipString(CharSequence input, int position, int to) {
+        position++;
+        while (position < to && is(input.charAt(position), CharClass.STRING)) {
+            if (input.charAt(position) == '\\') {
+                if (position + 1 >= to || !is(input.charAt(position + 1), CharClass.BNRT)) {
+                    return -1;
+                }
+                position++;
+            }
+            position++;
+        }
+        return position < to && input.charAt(position) == '"' ? position + 1 : -1;
+    }
+
+    /**
+     * Returns the index after the character literal starting at the given
+     * position, or -1 if it is invalid.
+     */
+    private static int skipCharacter(CharSequence input, int position, int to) {
+        position++;
+        if (position >= to || !is(input.charAt(position), CharClass.CHARACTER)) {
+            return -1;
+        }
+        position++;
+        if (position < to && is(input.charAt(position), CharClass.BNRT)) {
+            position++;
+        }
+        return position < to && input.charAt(position) == '\'' ? position + 1 : -1;
+    }
+
+    /**
+     * Updates the tokens of a previous version of the input after an edit
+     * which replaced {@code removed} characters at {@code offset} with
+     * {@code inserted} new ones, where this lexer's input is the text after
+     * the edit. The result is the same as {@link #lex()} on the new text.
+     *
+     * Lexing restarts at the end of the last token before the edit, since no
+     * token depends on characters past the one which ends it. Once the lexer
+     * reaches a token start after the inserted text which was also a token
+     * start before the edit, the rest of the text is unchanged and lexes the
+     * same way, so the previous tokens are reused with their indices shifted.
+     * Tokens before the edit are reused as they are, and tokens after it are
+     * only recreated if the edit changed the length of the text. The previous
+     * tokens must have been lexed with this lexer's symbol table.
+     */
+    public List<Token> relex(List<Token> previous, int offset, int removed, int inserted) {
+        if (chars.reader != null) {
+            throw new IllegalStateException("Relexing requires the whole input in memory.");
+        }
+        if (offset < 0 || removed < 0 || inserted < 0 || offset + inserted > chars.end) {
+            throw new IllegalArgumentException("Invalid edit of " + removed + " characters at " + offset + ".");
+        }
+        int low = 0;
+        int high = previous.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Token token = previous.get(middle);
+            if (token.getIndex() + token.getLength() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Token> tokens = new ArrayList<>(previous.subList(0, low));
+        if (low > 0) {
+            Token last = previous.get(low - 1);
+            chars.index = last.getIndex() + last.getLength();
+        } else {
+            chars.index = 0;
+        }
+        chars.skip();
+        int delta = inserted - removed;
+        int next = low;
+        while (hasToken()) {
+            int index = chars.getIndex();
+            while (next < previous.size() && previous.get(next).getIndex() + delta < index) {
+                next++;
+            }
+            if (index >= offset + inserted && next < previous.size()
+                    && previous.get(next).getIndex() + delta == index) {
+                for (Token token : previous.subList(next, previous.size())) {
+                    tokens.add(shift(token, delta));
+                }
+                chars.index = chars.end;
+                chars.skip();
+                break;
+            }
+            tokens.add(lexToken());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns a token from the previous version of the input moved by the
+     * given number of characters, sliced from the new input.
+     */
+    private Token shift(Token token, int delta) {
+        if (delta == 0) {
+            return token;
+        } else if (token.getSymbol() != SymbolTable.NONE) {
+            return new Token(symbols, token.getSymbol(), token.getIndex() + delta);
+        }
+        return new Token(token.getType(), chars.input, token.getIndex() + delta, token.getLength());
+    }
+
+    /**
+     * Returns an iterator which lexes one token per call to {@code next()},
+     * producing the same tokens as {@link #lex()}. Combined with a
+     * {@link Reader} or channel input this never holds more than the current
+     * token and its lookahead in memory.
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return hasToken();
+            }
+
+            @Override
+            public Token next() {
+                if (!hasToken()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns a sequential, ordered spliterator over the tokens in the same
+     * way as {@link #iterator()}.
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Skips any whitespace before the next token and returns true if there is
+     * a token left to lex.
+     */
+    private boolean hasToken() {
+        //filters white space so lextoken is only called on the characters that are not the whitespace
+        if(peek(CharClass.WHITESPACE)){
+            while(match(CharClass.WHITESPACE)){};
+            chars.skip();
+        }
+        return chars.has(0);
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -82,19 +550,19 @@ public final class Lexer {
      */
     public Token lexToken() {//calls the below lex functions
 
-        if(peek(identifier1)){
+        if(peek(CharClass.IDENTIFIER_START)){
             return lexIdentifier();
         }
-        else if(peek(apostrophe)){
+        else if(peek(CharClass.APOSTROPHE)){
             return lexCharacter();
         }
-        else if(peek(quote)){
+        else if(peek(CharClass.QUOTE)){
             return lexString();
         }
-        else if(peek(integer)){
+        else if(peek(CharClass.DIGIT) || peek(CharClass.INTEGER, CharClass.DIGIT)){
             return lexNumber();
         }
-        else if(!peek(whitespace)){
+        else if(!peek(CharClass.WHITESPACE)){
             return lexOperator();
         }
 
@@ -102,30 +570,30 @@ public final class Lexer {
     }
 
     public Token lexIdentifier() {//[A-Za-z@][0-9A-Za-z_-]*
-        if(peek(identifier1)){
-            match(identifier1);
-            while(peek(identifier)){
-                match(identifier);}
-            return chars.emit(IDENTIFIER);
+        if(peek(CharClass.IDENTIFIER_START)){
+            match(CharClass.IDENTIFIER_START);
+            while(peek(CharClass.IDENTIFIER)){
+                match(CharClass.IDENTIFIER);}
+            return chars.emit(symbols);
         }
         throw new ParseException("Identifer Parsing Error", chars.getIndex());
     }
 
     public Token lexNumber() {//[0-9]
-        if(peek("0", integer)){
+        if(peek(CharClass.ZERO, CharClass.INTEGER)){
             throw new ParseException("Leading 0s", chars.getIndex());
         }
-        if(peek(integer)){
-            match(integer);
+        if(peek(CharClass.INTEGER)){
+            match(CharClass.INTEGER);
         }
-        while(peek(integer19)){
-            match(integer19);
+        while(peek(CharClass.DIGIT)){
+            match(CharClass.DIGIT);
         }
-        if(peek(decimal)){
-            match(decimal);
-            if(peek(integer19)){
-            while(peek(integer19)){
-                match(integer19);
+        if(peek(CharClass.DECIMAL)){
+            match(CharClass.DECIMAL);
+            if(peek(CharClass.DIGIT)){
+            while(peek(CharClass.DIGIT)){
+                match(CharClass.DIGIT);
             }
             return chars.emit(DECIMAL);}
             else
@@ -136,14 +604,14 @@ public final class Lexer {
     }
 
     public Token lexCharacter() {//(.|\n)
-        if(peek(apostrophe)){
-            match(apostrophe);
-            if(peek(character)){
-                match(character);
-                if(peek(bnrt)){
-                    match(bnrt);}
-                if(peek(apostrophe)){
-                    match(apostrophe);
+        if(peek(CharClass.APOSTROPHE)){
+            match(CharClass.APOSTROPHE);
+            if(peek(CharClass.CHARACTER)){
+                match(CharClass.CHARACTER);
+                if(peek(CharClass.BNRT)){
+                    match(CharClass.BNRT);}
+                if(peek(CharClass.APOSTROPHE)){
+                    match(CharClass.APOSTROPHE);
                     return chars.emit(CHARACTER); //TODO
                 }
             }
@@ -153,21 +621,21 @@ public final class Lexer {
     }
 
     public Token lexString() {// \"(([^\\\\\b\n\r\t\"'])|(\\\\[\\\\bnrt'"]))*\"
-        if(peek(quote)){
-            match(quote);
-        }
-        while(peek(string)){
-            if(peek(escape)){
-                match(escape);
-                if(peek(bnrt)){
-                match(bnrt);}
+        if(peek(CharClass.QUOTE)){
+            match(CharClass.QUOTE);
+        }
+        while(peek(CharClass.STRING)){
+            if(peek(CharClass.ESCAPE)){
+                match(CharClass.ESCAPE);
+                if(peek(CharClass.BNRT)){
+                match(CharClass.BNRT);}
                 else{throw new ParseException("Invalid escape", chars.getIndex());}
             }
             else
-            match(string);
+            match(CharClass.STRING);
         }
-        if(peek(quote)){
-            match(quote);
+        if(peek(CharClass.QUOTE)){
+            match(CharClass.QUOTE);
             return chars.emit(STRING);
         }
 
@@ -179,16 +647,16 @@ public final class Lexer {
     }
 
     public Token lexOperator() {
-        if(peek(operator)){
-            match(operator);
-            if(peek(operator)){
-                match(operator);
+        if(peek(CharClass.OPERATOR)){
+            match(CharClass.OPERATOR);
+            if(peek(CharClass.OPERATOR)){
+                match(CharClass.OPERATOR);
             }
             return chars.emit(OPERATOR);
         }
         else{
-            if(peek(notwhitespace)){
-                match(notwhitespace);
+            if(peek(CharClass.NOT_WHITESPACE)){
+                match(CharClass.NOT_WHITESPACE);
                 return chars.emit(OPERATOR);}
         }
          throw new ParseException("something happened to operator, guess it couldn't help you take this call", chars.get(0));//TODO
@@ -225,6 +693,100 @@ public final class Lexer {
         return peek;
     }
 
+    /**
+     * Class-based counterpart of {@link #peek(String...)} used by the lex
+     * methods. With {@link Engine#TABLE} this is a single table lookup and
+     * does not allocate; with {@link Engine#REGEX} it defers to the pattern.
+     */
+    private boolean peek(CharClass charClass) {
+        if (engine == Engine.REGEX) {
+            return peek(charClass.regex);
+        }
+        return chars.has(0) && (classify(chars.get(0)) & charClass.mask) != 0;
+    }
+
+    private boolean peek(CharClass first, CharClass second) {
+        if (engine == Engine.REGEX) {
+            return peek(first.regex, second.regex);
+        }
+        return chars.has(1)
+                && (classify(chars.get(0)) & first.mask) != 0
+                && (classify(chars.get(1)) & second.mask) != 0;
+    }
+
+    private boolean match(CharClass charClass) {
+        boolean peek = peek(charClass);
+        if(peek){
+            chars.advance();
+        }
+        return peek;
+    }
+
+    private static int classify(char c) {
+        return c < ASCII.length ? ASCII[c] : NON_ASCII;
+    }
+
+    private static boolean is(char c, CharClass charClass) {
+        return (classify(c) & charClass.mask) != 0;
+    }
+
+    private static int computeMask(char c) {
+        int mask = 0;
+        for (CharClass charClass : CharClass.values()) {
+            if (String.valueOf(c).matches(charClass.regex)) {
+                mask |= charClass.mask;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * A read-only view of a buffer of ASCII bytes as characters, which avoids
+     * decoding or copying the input.
+     */
+    private static final class AsciiBuffer implements CharSequence {
+
+        private final ByteBuffer buffer;
+
+        private AsciiBuffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private static boolean isAscii(ByteBuffer buffer) {
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                if (buffer.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(buffer.position() + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(buffer.position() + start + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+
+    }
+
     /**
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
@@ -232,23 +794,59 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * When the whole input is in memory, emitted tokens refer into it rather
+     * than copying their literal. When created from a {@link Reader} the input
+     * is instead a sliding window which is refilled on demand by
+     * {@link #has(int)}. Everything before the start of the current token is
+     * discarded on refill, so memory is bounded by the longest token plus
+     * {@link #CHUNK_SIZE}, and literals are copied out as they are emitted.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int CHUNK_SIZE = 8192;
+
+        private final CharSequence input;
+        private final Reader reader;
+        private final char[] chunk;
+        private int start = 0;
+        private int end;
         private int index = 0;
         private int length = 0;
 
         public CharStream(String input) {
+            this((CharSequence) input);
+        }
+
+        public CharStream(Reader reader) {
+            this.input = new StringBuilder(CHUNK_SIZE);
+            this.reader = reader;
+            this.chunk = new char[CHUNK_SIZE];
+            this.end = 0;
+        }
+
+        private CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a stream over the characters of the input between
+         * {@code from} and {@code to}, keeping indices absolute.
+         */
+        private CharStream(CharSequence input, int from, int to) {
             this.input = input;
+            this.reader = null;
+            this.chunk = null;
+            this.index = from;
+            this.end = to;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end || fill(index + offset);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            return input.charAt(index + offset - start);
         }
 
         public int getIndex() {return index;}
@@ -262,10 +860,52 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Emits the current literal as an identifier interned in the given
+         * symbol table, then skips it as with {@link #emit(Token.Type)}.
+         */
+        public Token emit(SymbolTable symbols) {
+            int start = index - length;
+            int symbol = symbols.intern(input, start - this.start, length);
+            skip();
+            return new Token(symbols, symbol, start);
+        }
+
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (reader == null) {
+                return new Token(type, input, start, index - start);
+            }
+            return new Token(type, input.subSequence(start - this.start, index - this.start).toString(), start);
+        }
+
+        /**
+         * Reads from the reader until the character at {@code position} is
+         * available or the input is exhausted, first dropping the characters
+         * before the current token.
+         */
+        private boolean fill(int position) {
+            if (reader == null) {
+                return false;
+            }
+            StringBuilder window = (StringBuilder) input;
+            int tokenStart = index - length;
+            window.delete(0, tokenStart - start);
+            start = tokenStart;
+            try {
+                while (position >= end) {
+                    int read = reader.read(chunk);
+                    if (read < 0) {
+                        return false;
+                    }
+                    window.append(chunk, 0, read);
+                    end += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
         }
 
     }
@@ -0,0 +1,88 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * The binary operators of the compiled execution modes, applied to the values
+ * of operands that have already been evaluated. Each gives the same result as
+ * the {@link Interpreter}, including failing with the error of the last type
+ * tried when the operand types do not match.
+ */
+final class Operators {
+
+    private Operators() {}
+
+    static boolean and(Object left, Object right) {
+        return left.equals(true) && right.equals(true);
+    }
+
+    static boolean or(Object left, Object right) {
+        return left.equals(true) || right.equals(true);
+    }
+
+    /**
+     * Returns true if comparing the right operand to the left gives the
+     * expected result, so 1 for {@code <}, -1 for {@code >}, and 0 for
+     * {@code ==}.
+     */
+    static boolean compare(Object left, Object right, int expected) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) right).compareTo((BigInteger) left) == expected;
+        }
+        BigDecimal decimal = require(BigDecimal.class, left);
+        return require(BigDecimal.class, right).compareTo(decimal) == expected;
+    }
+
+    static Object add(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).add((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).add((BigDecimal) right);
+        }
+        String string = require(String.class, left);
+        return string + require(String.class, right);
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).subtract((BigInteger) right);
+        }
+        return require(BigDecimal.class, left).subtract(require(BigDecimal.class, right));
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).multiply((BigInteger) right);
+        }
+        return require(BigDecimal.class, left).multiply(require(BigDecimal.class, right));
+    }
+
+    static Object divide(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger && ((BigInteger) right).signum() != 0) {
+            return ((BigInteger) left).divide((BigInteger) right);
+        }
+        return require(BigDecimal.class, left).divide(require(BigDecimal.class, right), RoundingMode.CEILING);
+    }
+
+    static Object power(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger && ((BigInteger) right).intValue() >= 0) {
+            return ((BigInteger) left).pow(((BigInteger) right).intValue());
+        }
+        return require(BigDecimal.class, left).pow(require(BigDecimal.class, right).intValue());
+    }
+
+    /**
+     * Casts a value to the given type, failing with the same error as
+     * {@link Interpreter#requireType}.
+     */
+    static <T> T require(Class<T> type, Object value) {
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        } else {
+            throw new RuntimeException("Expected type " + type.getName() + ", received " + value.getClass().getName() + ".");
+        }
+    }
+
+}
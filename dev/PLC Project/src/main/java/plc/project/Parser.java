@@ -2,9 +2,21 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -20,12 +32,74 @@ import java.util.Optional;
  * to calling that functions.
  */
 public final class Parser {
-    Ast.Expression previousExpression;
+
+    /**
+     * Selects how nested expressions and blocks are parsed. {@link #RECURSIVE}
+     * mirrors the grammar with one method call per level of nesting, while
+     * {@link #ITERATIVE} keeps the pending operators, brackets, and open
+     * statements on heap-allocated stacks, so that nesting depth is limited
+     * only by memory instead of the thread's stack size. Both produce the same
+     * AST.
+     */
+    public enum Mode {
+        RECURSIVE,
+        ITERATIVE
+    }
+
+    /**
+     * Binary operator precedence levels, from loosest to tightest.
+     */
+    private static final int LOGICAL = 0;
+    private static final int COMPARISON = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+
+    /**
+     * The fewest tokens of functions {@link #parseSourceParallel(ForkJoinPool)}
+     * will hand to a separate task; consecutive functions are batched until
+     * they reach this size.
+     */
+    private static final int PARALLEL_BATCH_SIZE = 1 << 12;
 
     private final TokenStream tokens;
+    private final Mode mode;
+
+    /**
+     * Collects syntax errors while recovering from them, or null if the first
+     * error should be thrown.
+     */
+    private List<ParseException> errors;
 
     public Parser(List<Token> tokens) {
+        this(tokens, Mode.RECURSIVE);
+    }
+
+    public Parser(List<Token> tokens, Mode mode) {
+        this(tokens, 0, tokens.size(), mode);
+    }
+
+    public Parser(Iterator<Token> tokens) {
+        this(tokens, Mode.RECURSIVE);
+    }
+
+    /**
+     * Creates a parser which pulls tokens from the iterator as it needs them
+     * instead of requiring the whole list up front. Such a parser cannot
+     * {@link #parseSourceParallel(ForkJoinPool)} or
+     * {@link #reparse(Ast.Source, List, int, int, int)}.
+     */
+    public Parser(Iterator<Token> tokens, Mode mode) {
         this.tokens = new TokenStream(tokens);
+        this.mode = mode;
+    }
+
+    /**
+     * Creates a parser over only the tokens from {@code start} up to but
+     * excluding {@code end}.
+     */
+    private Parser(List<Token> tokens, int start, int end, Mode mode) {
+        this.tokens = new TokenStream(tokens, start, end);
+        this.mode = mode;
     }
 
     /**
@@ -34,29 +108,408 @@ public final class Parser {
     public Ast.Source parseSource() throws ParseException {
         List<Ast.Global> globals = new ArrayList<Ast.Global>();
         List<Ast.Function> functions = new ArrayList<Ast.Function>();
-while(tokens.has(0)) {
-    if (peek("VAL") | peek("VAR") | peek("LIST")) {
-        if (match("VAL")) {
-            globals.add(parseImmutable());
+        while(tokens.has(0)) {
+            int start = tokens.index;
+            try {
+                parseDeclaration(globals, functions);
+            } catch (ParseException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                errors.add(e);
+                synchronize(start, true);
+            }
         }
-        if (match("VAR")) {
-            globals.add(parseMutable());
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the next global or function of the {@code source} rule, adding
+     * it to the corresponding list.
+     */
+    private void parseDeclaration(List<Ast.Global> globals, List<Ast.Function> functions) throws ParseException {
+        Ast declaration = parseDeclaration();
+        if (declaration instanceof Ast.Function) {
+            functions.add((Ast.Function) declaration);
+        } else {
+            globals.add((Ast.Global) declaration);
         }
-        if (match("LIST")) {
-            globals.add(parseList());
+    }
+
+    /**
+     * Parses the next global or function of the {@code source} rule.
+     */
+    private Ast parseDeclaration() throws ParseException {
+        if (match(Kind.VAL)) {
+            return parseImmutable();
+        } else if (match(Kind.VAR)) {
+            return parseMutable();
+        } else if (match(Kind.LIST)) {
+            return parseList();
+        } else if (match(Kind.LET)) {
+            return parseGlobal();
+        } else if (match(Kind.FUN)) {
+            return parseFunction();
+        } else {
+            throw new ParseException("Expected global or function", index());
         }
     }
-    if (peek("LET")) {
-        match("LET");
-        globals.add(parseGlobal());
+
+    /**
+     * Returns an iterator which parses one global or function of the
+     * {@code source} rule per call to {@code next()}, producing the same
+     * declarations as {@link #parseSource()} in source order. Combined with a
+     * parser over a token iterator, such as {@link Lexer#iterator()}, only
+     * the declaration being parsed is held in memory, so earlier ones can be
+     * analyzed or discarded before the rest of the input has been read. The
+     * first syntax error is thrown from {@code next()}.
+     */
+    public Iterator<Ast> iterator() {
+        return new Iterator<Ast>() {
+
+            @Override
+            public boolean hasNext() {
+                return tokens.has(0);
+            }
+
+            @Override
+            public Ast next() {
+                if (!tokens.has(0)) {
+                    throw new NoSuchElementException();
+                }
+                return parseDeclaration();
+            }
+
+        };
+    }
+
+    /**
+     * Returns a sequential, ordered spliterator over the declarations in the
+     * same way as {@link #iterator()}.
+     */
+    public Spliterator<Ast> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Parses the {@code source} rule, recovering from syntax errors instead of
+     * stopping at the first one. Each error is added to the given list and
+     * parsing resumes at the next statement or top-level declaration, as found
+     * by {@link #synchronize(int, boolean)}. A statement which fails to parse
+     * is replaced by an {@link Ast.Statement.Error}, a function missing its
+     * {@code END} keeps the statements parsed so far, and any other global or
+     * function which fails is left out, so the returned AST is only complete
+     * if no errors were added. The later stages reject an error node with a
+     * {@link RuntimeException} when they reach it.
+     */
+    public Ast.Source parseSource(List<ParseException> errors) {
+        this.errors = errors;
+        try {
+            return parseSource();
+        } finally {
+            this.errors = null;
+        }
     }
-    if (peek("FUN")) {
-        match("FUN");
-        functions.add(parseFunction());
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()}
+     * using the common fork/join pool.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
     }
-}
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()},
+     * parsing the functions as separate tasks on the given pool while the
+     * globals between them are parsed on the calling thread.
+     *
+     * The functions are found by {@link #declarations()}, which only counts
+     * keywords, so each task checks that its parser ends exactly on the
+     * {@code END} the pre-pass found. If that fails, or anything fails to
+     * parse, the whole source is parsed again sequentially, so the AST and
+     * any {@link ParseException} are exactly those of {@link #parseSource()}.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        if (tokens.iterator != null) {
+            throw new IllegalStateException("Parallel parsing requires the whole token list.");
+        }
+        int start = tokens.index;
+        List<Declaration> bounds = new ArrayList<>();
+        for (Declaration declaration : declarations()) {
+            if (declaration.function) {
+                bounds.add(declaration);
+            }
+        }
+        if (bounds.size() < 2) {
+            return parseSource();
+        }
+        List<ForkJoinTask<List<Ast.Function>>> tasks = new ArrayList<>();
+        for (int i = 0; i < bounds.size(); ) {
+            List<Declaration> batch = new ArrayList<>();
+            int size = 0;
+            while (i < bounds.size() && size < PARALLEL_BATCH_SIZE) {
+                batch.add(bounds.get(i));
+                size += bounds.get(i).end - bounds.get(i).start;
+                i++;
+            }
+            tasks.add(pool.submit(() -> parseFunctions(batch)));
+        }
+        Ast.Source source = null;
+        try {
+            source = parseSourceAround(bounds, tasks);
+        } catch (ParseException e) {
+            // Reparsed sequentially below so the first error is reported.
+        } finally {
+            for (ForkJoinTask<List<Ast.Function>> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        if (source == null) {
+            tokens.seek(start);
+            source = parseSource();
+        }
+        return source;
+    }
+
+    /**
+     * Parses the globals of the source, taking the functions at the given
+     * bounds from the tasks in order instead of parsing them. Returns null if
+     * the globals did not end exactly where the functions start.
+     */
+    private Ast.Source parseSourceAround(List<Declaration> bounds, List<ForkJoinTask<List<Ast.Function>>> tasks) throws ParseException {
+        List<Ast.Global> globals = new ArrayList<Ast.Global>();
+        List<Ast.Function> functions = new ArrayList<Ast.Function>();
+        Iterator<Ast.Function> parsed = Collections.emptyIterator();
+        int next = 0;
+        int task = 0;
+        while (tokens.has(0)) {
+            if (next < bounds.size() && tokens.index == bounds.get(next).start) {
+                if (!parsed.hasNext()) {
+                    parsed = join(tasks.get(task++)).iterator();
+                }
+                functions.add(parsed.next());
+                tokens.seek(bounds.get(next++).end);
+            } else {
+                parseDeclaration(globals, functions);
+            }
+        }
+        return next == bounds.size() ? new Ast.Source(globals, functions) : null;
+    }
+
+    /**
+     * Parses each of the given functions with a parser limited to its tokens,
+     * failing unless it ends exactly at the end of those tokens.
+     */
+    private List<Ast.Function> parseFunctions(List<Declaration> bounds) throws ParseException {
+        List<Ast.Function> functions = new ArrayList<Ast.Function>();
+        for (Declaration bound : bounds) {
+            Parser parser = new Parser(tokens.tokens, bound.start, bound.end, mode);
+            parser.match(Kind.FUN);
+            functions.add(parser.parseFunction());
+            if (parser.tokens.has(0)) {
+                throw new ParseException("Expected end of function", parser.index());
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * Parses the {@code source} rule after an edit, reusing every global and
+     * function of the previous AST which the edit did not touch. The tokens
+     * of this parser must be the previous tokens with the edit applied, such
+     * as those returned by {@link Lexer#relex(List, int, int, int)} for the
+     * same edit of {@code removed} characters at {@code offset} replaced by
+     * {@code inserted} new ones.
+     *
+     * Declarations whose tokens all end before the edit or all start after
+     * it are kept by identity, so consumers can skip anything they have
+     * already seen. Only the declarations in between are parsed again, along
+     * with the global just before them, since a global may end at an
+     * optional token the edit could have added. If the previous tokens do not
+     * split into the declarations of the previous AST, the new tokens do not
+     * line up with them (such as when the edit extends a token next to it),
+     * or anything fails to parse, the whole source is parsed again, so the
+     * AST and any {@link ParseException} are equal to those of
+     * {@link #parseSource()}.
+     */
+    public Ast.Source reparse(Ast.Source previous, List<Token> previousTokens, int offset, int removed, int inserted) throws ParseException {
+        if (tokens.iterator != null) {
+            throw new IllegalStateException("Reparsing requires the whole token list.");
+        }
+        int start = tokens.index;
+        Ast.Source source = null;
+        try {
+            source = reparseBetween(previous, previousTokens, offset, offset + removed, inserted - removed);
+        } catch (ParseException e) {
+            // Reparsed sequentially below so the first error is reported.
+        }
+        if (source == null) {
+            tokens.seek(start);
+            source = parseSource();
+        }
+        return source;
+    }
+
+    /**
+     * Reparses the declarations touched by an edit of the previous tokens
+     * from {@code from} to {@code to}, which moved every later token by
+     * {@code delta}, or returns null if the tokens do not line up with the
+     * previous AST.
+     */
+    private Ast.Source reparseBetween(Ast.Source previous, List<Token> previousTokens, int from, int to, int delta) throws ParseException {
+        List<Declaration> declarations = new Parser(previousTokens, mode).declarations();
+        int globalCount = 0;
+        for (Declaration declaration : declarations) {
+            globalCount += declaration.function ? 0 : 1;
+        }
+        if (globalCount != previous.getGlobals().size()
+                || declarations.size() - globalCount != previous.getFunctions().size()) {
+            return null;
+        }
+        int first = 0;
+        while (first < declarations.size()) {
+            Token last = previousTokens.get(declarations.get(first).end - 1);
+            if (last.getIndex() + last.getLength() > from) {
+                break;
+            }
+            first++;
+        }
+        if (first > 0 && !declarations.get(first - 1).function) {
+            first--;
+        }
+        int after = first;
+        while (after < declarations.size() && previousTokens.get(declarations.get(after).start).getIndex() < to) {
+            after++;
+        }
+        int regionStart = first > 0 ? declarations.get(first - 1).end : tokens.index;
+        if (first > 0 && tokens.get(regionStart - tokens.index - 1).getLength()
+                != previousTokens.get(regionStart - 1).getLength()) {
+            return null;
+        }
+        int regionEnd = tokens.end;
+        if (after < declarations.size()) {
+            regionEnd = find(previousTokens.get(declarations.get(after).start).getIndex() + delta);
+            if (regionEnd < regionStart
+                    || tokens.end - regionEnd != previousTokens.size() - declarations.get(after).start) {
+                return null;
+            }
+        }
+        int globalsBefore = 0;
+        int globalsAfter = 0;
+        for (int i = 0; i < declarations.size(); i++) {
+            if (!declarations.get(i).function) {
+                globalsBefore += i < first ? 1 : 0;
+                globalsAfter += i >= after ? 1 : 0;
+            }
+        }
+        int functionsBefore = first - globalsBefore;
+        int functionsAfter = declarations.size() - after - globalsAfter;
+        List<Ast.Global> globals = new ArrayList<Ast.Global>(previous.getGlobals().subList(0, globalsBefore));
+        List<Ast.Function> functions = new ArrayList<Ast.Function>(previous.getFunctions().subList(0, functionsBefore));
+        Parser parser = new Parser(tokens.tokens, regionStart, regionEnd, mode);
+        while (parser.tokens.has(0)) {
+            parser.parseDeclaration(globals, functions);
+        }
+        globals.addAll(previous.getGlobals().subList(previous.getGlobals().size() - globalsAfter, previous.getGlobals().size()));
+        functions.addAll(previous.getFunctions().subList(previous.getFunctions().size() - functionsAfter, previous.getFunctions().size()));
+        tokens.seek(tokens.end);
         return new Ast.Source(globals, functions);
-        //throw new ParseException("not global or function", tokens.index); //TODO
+    }
+
+    /**
+     * Returns the index of the token starting at the given character index,
+     * or -1 if there is none.
+     */
+    private int find(int index) {
+        int low = tokens.index;
+        int high = tokens.end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int start = tokens.tokens.get(middle).getIndex();
+            if (start < index) {
+                low = middle + 1;
+            } else if (start > index) {
+                high = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the bounds of each global and function from the current token to
+     * the end. A global runs up to the next declaration, while a function
+     * runs up to its {@code END}, which is matched by counting {@code IF},
+     * {@code WHILE}, and {@code SWITCH} against {@code END} without parsing
+     * anything. The bounds are only a guess which the parser has to confirm.
+     * If a function is not closed before the next {@code FUN} or the end of
+     * the tokens, no bounds are returned.
+     */
+    private List<Declaration> declarations() {
+        List<Declaration> declarations = new ArrayList<>();
+        Declaration global = null;
+        int depth = -1;
+        int offset = 0;
+        for (; tokens.has(offset); offset++) {
+            switch (tokens.kind(offset)) {
+                case FUN:
+                    if (depth >= 0) {
+                        return Collections.emptyList();
+                    }
+                    if (global != null) {
+                        global.end = tokens.index + offset;
+                        global = null;
+                    }
+                    declarations.add(new Declaration(tokens.index + offset, true));
+                    depth = 0;
+                    break;
+                case VAL: case VAR: case LIST: case LET:
+                    if (depth < 0) {
+                        if (global != null) {
+                            global.end = tokens.index + offset;
+                        }
+                        global = new Declaration(tokens.index + offset, false);
+                        declarations.add(global);
+                    }
+                    break;
+                case IF: case WHILE: case SWITCH:
+                    if (depth >= 0) {
+                        depth++;
+                    }
+                    break;
+                case END:
+                    if (depth == 0) {
+                        declarations.get(declarations.size() - 1).end = tokens.index + offset + 1;
+                    }
+                    if (depth >= 0) {
+                        depth--;
+                    }
+                    break;
+            }
+        }
+        if (depth >= 0) {
+            return Collections.emptyList();
+        }
+        if (global != null) {
+            global.end = tokens.index + offset;
+        }
+        return declarations;
+    }
+
+    private static List<Ast.Function> join(ForkJoinTask<List<Ast.Function>> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -81,27 +534,27 @@ while(tokens.has(0)) {
             String typename = "Any";
             String name = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
-            if(match(":")){
+            if(match(Kind.COLON)){
                 typename = tokens.get(0).getLiteral();
                 match(Token.Type.IDENTIFIER);
             }
-            if(match("=")){
-                if(peek("[")){
-                    //match("[");
+            if(match(Kind.EQUALS)){
+                if(peek(Kind.OPEN_BRACKET)){
+                    //match(Kind.OPEN_BRACKET);
                     if(peek("[", "]")){
-                        throw new ParseException("Missing insides", tokens.get(0).getIndex());
+                        throw new ParseException("Missing insides", index());
                     }
 
                     Ast.Global g = new Ast.Global(name, typename, true, Optional.ofNullable(parseExpression()));
-                    match(";");
+                    match(Kind.SEMICOLON);
                     return g;
                 }
             }
             Ast.Global g = new Ast.Global(name, typename,true, Optional.empty());
-            match(";");
+            match(Kind.SEMICOLON);
             return g;
         }
-        throw new ParseException("no Identifier", tokens.get(-1).getIndex()); //TODO
+        throw new ParseException("no Identifier", index()); //TODO
     }
 
     /**
@@ -109,24 +562,22 @@ while(tokens.has(0)) {
      * next token declares a mutable global variable, aka {@code VAR}.
      */
     public Ast.Global parseMutable() throws ParseException {
-        if(!peek(Token.Type.IDENTIFIER)){ throw new ParseException("No Identifier After VAR", tokens.get(-1).getIndex());}
+        if(!peek(Token.Type.IDENTIFIER)){ throw new ParseException("No Identifier After VAR", index());}
         String typeName = "Any";
         String name = tokens.get(0).getLiteral();
         match(Token.Type.IDENTIFIER);
-        if(peek(":")){
-            match(":");
+        if(peek(Kind.COLON)){
+            match(Kind.COLON);
             typeName = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
         }
-        if(peek("=")){
-            match("=");}
-            if(tokens.has(0)){
-                Ast.Global Returnable =  new Ast.Global(name, typeName, true, Optional.ofNullable(parseExpression()));
-                if(match(";"))
-                 return Returnable;
-                else throw new ParseException("no ;", tokens.get(-1).getIndex());
-            }
-            else throw new ParseException("no expression", tokens.get(-1).getIndex());
+        Optional<Ast.Expression> value = Optional.empty();
+        if(match(Kind.EQUALS)){
+            if(!tokens.has(0)){throw new ParseException("no expression", index());}
+            value = Optional.of(parseExpression());
+        }
+        if(!match(Kind.SEMICOLON)){throw new ParseException("no ;", index());}
+        return new Ast.Global(name, typeName, true, value);
 
     }
 
@@ -138,20 +589,20 @@ while(tokens.has(0)) {
         String name = tokens.get(0).getLiteral();
         String typename = "Any";
         match(Token.Type.IDENTIFIER);
-        if(match(":")){
+        if(match(Kind.COLON)){
             typename = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
         }
-        if(peek("=")){
-            match("=");
+        if(peek(Kind.EQUALS)){
+            match(Kind.EQUALS);
             if(tokens.has(0)){Ast.Global Returnable = new Ast.Global(name, typename, false, Optional.ofNullable(parseExpression()));
-            if(match(";")){
+            if(match(Kind.SEMICOLON)){
                 return Returnable;}
-            else throw new ParseException("Expected Semicolon", tokens.get(-1).getIndex());}
+            else throw new ParseException("Expected Semicolon", index());}
 
-            else throw new ParseException("no expression", tokens.get(-1).getIndex());
+            else throw new ParseException("no expression", index());
         }
-        else throw new ParseException("no assignment for immutable type", tokens.get(0).getIndex());
+        else throw new ParseException("no assignment for immutable type", index());
     }
 
     /**
@@ -166,38 +617,47 @@ while(tokens.has(0)) {
             List<String> parameters = new ArrayList<String>();
             List<String> parameterTypes = new ArrayList<String>();
             List<Ast.Statement> statements = new ArrayList<Ast.Statement>();
-            if(!match("(")){
-                throw new ParseException("No Parenthesis", tokens.get(0).getIndex());
+            if(!match(Kind.OPEN_PAREN)){
+                throw new ParseException("No Parenthesis", index());
             }
-            while(!match(")")){
+            while(!match(Kind.CLOSE_PAREN)){
                 if(peek(Token.Type.IDENTIFIER)){
                 parameters.add(tokens.get(0).getLiteral());
                 match(Token.Type.IDENTIFIER);}
-                else if(peek(":")){match(":");
+                else if(peek(Kind.COLON)){match(Kind.COLON);
                     if(peek(Token.Type.IDENTIFIER)){
                         parameterTypes.add(tokens.get(0).getLiteral());
                         match(Token.Type.IDENTIFIER);
                     }
                 }
-                else match(",");
+                else if(!match(Kind.COMMA)){
+                    throw new ParseException("Expected parameter", index());
+                }
             }
-            if(parameters.size() != parameterTypes.size()){throw new ParseException("Missing Type", tokens.index - 1);}
-            if(peek(":")){match(":");
+            if(parameters.size() != parameterTypes.size()){throw new ParseException("Missing Type", tokens.get(-1).getIndex());}
+            if(peek(Kind.COLON)){match(Kind.COLON);
                 if(peek(Token.Type.IDENTIFIER)){
                     returntype = tokens.get(0).getLiteral();
                     match(Token.Type.IDENTIFIER);
                 }
             }
-            if(!match("DO")){throw new ParseException("No DO", tokens.get(0).getIndex());}
-            while(!peek("END")){
-                while( !peek(";") && !peek("END")){
-                statements.add(parseStatement());}
-                match(";");
+            if(!match(Kind.DO)){throw new ParseException("No DO", index());}
+            if(mode == Mode.ITERATIVE){
+                statements = parseStatementsIteratively(new Frame(Frame.Kind.BODY, null, 0));
+            }
+            else while(!peek(Kind.END) && !atTopLevel()){
+                while( !peek(Kind.SEMICOLON) && !peek(Kind.END) && !atTopLevel()){
+                statements.add(parseStatementRecovering());}
+                match(Kind.SEMICOLON);
+            }
+            if(!match(Kind.END)){
+                ParseException exception = new ParseException("No END", index());
+                if(errors == null){throw exception;}
+                errors.add(exception);
             }
-            if(!match("END")){throw new ParseException("No END", tokens.get(0).getIndex()); }
 
         return new Ast.Function(name, parameters, parameterTypes, Optional.of(returntype), statements);}
-        throw new ParseException("SOMETHING", tokens.get(0).getIndex());
+        throw new ParseException("SOMETHING", index());
     }
 
     /**
@@ -205,59 +665,113 @@ while(tokens.has(0)) {
      * preceding token indicates the opening a block.
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
+        if(mode == Mode.ITERATIVE){
+            return parseStatementsIteratively(new Frame(Frame.Kind.BLOCK, null, 0));
+        }
         List<Ast.Statement> statements = new ArrayList<Ast.Statement>();
-        while(!peek("END") && !peek("ELSE") && !peek("DEFAULT") && !peek("CASE") && !peek("DO")){
-            while( !peek(";") && !peek("END") && !peek("ELSE") && !peek("DEFAULT") && !peek("CASE") && !peek("DO")){
-                statements.add(parseStatement());
+        while(!endsBlock() && !atTopLevel()){
+            while(!peek(Kind.SEMICOLON) && !endsBlock() && !atTopLevel()){
+                statements.add(parseStatementRecovering());
             }
-            match(";");
+            match(Kind.SEMICOLON);
         }
         return statements;
     }
 
+    /**
+     * Parses a statement as {@link #parseStatement()}, except that when
+     * recovering from errors a statement which fails is recorded and replaced
+     * by an {@link Ast.Statement.Error}.
+     */
+    private Ast.Statement parseStatementRecovering() throws ParseException {
+        int start = tokens.index;
+        try {
+            return parseStatement();
+        } catch (ParseException e) {
+            if(errors == null){
+                throw e;
+            }
+            errors.add(e);
+            synchronize(start, false);
+            return new Ast.Statement.Error(e.getMessage(), e.getIndex());
+        }
+    }
+
+    /**
+     * Returns true if recovering from errors and either there are no tokens
+     * left or the next token can only start a top-level declaration, in which
+     * case any open block was never closed and ends here.
+     */
+    private boolean atTopLevel() {
+        return errors != null && (!tokens.has(0) || tokens.kind(0).declaration);
+    }
+
+    /**
+     * Returns true if the current token ends a block, as {@code END},
+     * {@code ELSE}, {@code CASE}, {@code DEFAULT}, or {@code DO} do.
+     */
+    private boolean endsBlock() {
+        return tokens.has(0) && tokens.kind(0).endsBlock;
+    }
+
+    /**
+     * Skips past the tokens of a declaration or statement which failed to
+     * parse after starting at the given token. Within a function this stops
+     * before {@code ;}, {@code END}, {@code ELSE}, {@code CASE},
+     * {@code DEFAULT}, or {@code LET}, so that the enclosing block continues
+     * from there, while at the top level only the start of the next global or
+     * function will do. Either way at least one token is skipped, so a
+     * parse can never fail at the same token twice.
+     */
+    private void synchronize(int start, boolean topLevel) {
+        if(tokens.index == start && tokens.has(0)){
+            tokens.advance();
+        }
+        while(tokens.has(0) && !peek(Kind.FUN) && !peek(Kind.VAR) && !peek(Kind.VAL) && !peek(Kind.LIST)){
+            if(!topLevel && (peek(Kind.SEMICOLON) || peek(Kind.END) || peek(Kind.ELSE) || peek(Kind.CASE) || peek(Kind.DEFAULT) || peek(Kind.LET))){
+                return;
+            }
+            tokens.advance();
+        }
+    }
+
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
      * If the next tokens do not start a declaration, if, while, or return
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        if (peek(Token.Type.IDENTIFIER) | peek(Token.Type.OPERATOR)){
-            if(peek("IF")){
-                match("IF");
+        if(!peek(Token.Type.IDENTIFIER) && !peek(Token.Type.OPERATOR)){
+            throw new ParseException("Something", index());
+        }
+        Kind kind = tokens.kind(0);
+        if(mode == Mode.ITERATIVE && (kind == Kind.IF || kind == Kind.WHILE || kind == Kind.SWITCH)){
+            return parseStatementsIteratively(new Frame(Frame.Kind.STATEMENT, null, 0)).get(0);
+        }
+        switch (kind) {
+            case IF:
+                tokens.advance();
                 return parseIfStatement();
-            }
-            else if(peek("SWITCH")){
+            case SWITCH:
                 return parseSwitchStatement();
-            }
-            else if(peek("WHILE")){
-                match("WHILE");
+            case WHILE:
+                tokens.advance();
                 return parseWhileStatement();
-            }
-            else if(peek("RETURN")){
-                match("RETURN");
+            case RETURN:
+                tokens.advance();
                 return parseReturnStatement();
-            }
-            else if(peek("LET")){
+            case LET:
                 return parseDeclarationStatement();
-            }
-            else if(peek(Token.Type.IDENTIFIER, "=")){
-                Ast.Statement.Assignment returnable = new Ast.Statement.Assignment(parseExpression(), parseExpression());
-                if(peek(";")){
-                    match(";");
-                    return returnable;
-                }
-                else throw new ParseException("Missing semicolon", 1);
-            }
-            else{
-                Ast.Statement.Expression returnable = new Ast.Statement.Expression(parseExpression());
-                if(peek(";")){
-                    match(";");
-                    return returnable;
+            default:
+                Ast.Expression expression = parseExpression();
+                Ast.Statement returnable = match(Kind.EQUALS)
+                        ? new Ast.Statement.Assignment(expression, parseExpression())
+                        : new Ast.Statement.Expression(expression);
+                if(!match(Kind.SEMICOLON)){
+                    throw new ParseException("Missing semicolon", index());
                 }
-                else throw new ParseException("Missing semicolon", 1);
-            }
+                return returnable;
         }
-        throw new ParseException("Something", tokens.get(0).getIndex());
     }
 
     /**
@@ -266,24 +780,24 @@ while(tokens.has(0)) {
      * statement, aka {@code LET}.
      */
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
-        if(match("LET")){
+        if(match(Kind.LET)){
         if(peek(Token.Type.IDENTIFIER)){
             String name = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
 
             String typeName = null;
-            if(match(":")){
+            if(match(Kind.COLON)){
             typeName = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);}
-            if(peek(";")){
-                match(";");
+            if(peek(Kind.SEMICOLON)){
+                match(Kind.SEMICOLON);
                 return new Ast.Statement.Declaration(name, Optional.ofNullable(typeName), Optional.empty());
             }
 
-            if(tokens.has(0) && !peek("=")){throw new ParseException("no =", tokens.get(0).getIndex());}
+            if(!match(Kind.EQUALS)){throw new ParseException("no =", index());}
         return new Ast.Statement.Declaration(name, Optional.ofNullable(typeName) ,java.util.Optional.ofNullable(parseExpression()));}
-        else throw new ParseException("No Identifier after \"LET\"", tokens.get(0).getIndex());}
-        else throw new ParseException("Something wrong with LET", tokens.get(0).getIndex());
+        else throw new ParseException("No Identifier after \"LET\"", index());}
+        else throw new ParseException("Something wrong with LET", index());
     }
 
     /**
@@ -292,20 +806,20 @@ while(tokens.has(0)) {
      * {@code IF}.
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        if(peek(Token.Type.IDENTIFIER)){
+        if(tokens.has(0)){
             Ast.Expression condition = parseExpression();
-            if(peek("DO")){
-                match("DO");
+            if(peek(Kind.DO)){
+                match(Kind.DO);
                 List<Ast.Statement> DoLoop = parseBlock();
-                match("ELSE");
+                match(Kind.ELSE);
                 List<Ast.Statement> elseLoop = parseBlock();
-                if(match("END")){
+                if(match(Kind.END)){
                 return new Ast.Statement.If(condition, DoLoop, elseLoop);}
-                else throw new ParseException("NO END", tokens.get(0).getIndex());
+                else throw new ParseException("NO END", index());
             }
-            throw new ParseException("NO Do", tokens.get(0).getIndex());
+            throw new ParseException("NO Do", index());
         }
-        throw new ParseException("no Identifier after IF", tokens.get(0).getIndex());
+        throw new ParseException("no condition after IF", index());
     }
 
     /**
@@ -314,17 +828,17 @@ while(tokens.has(0)) {
      * {@code SWITCH}.
      */
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
-        match("SWITCH");
+        match(Kind.SWITCH);
         Ast.Expression expression = parseExpression();
         List<Ast.Statement.Case> list = new ArrayList<Ast.Statement.Case>();
-        if(peek("CASE")){
-            while (peek("CASE")){
+        if(peek(Kind.CASE)){
+            while (peek(Kind.CASE)){
                 list.add(parseCaseStatement());
             }
         }
-        if(!peek("DEFAULT")){throw new ParseException("No Default Case", tokens.get(0).getIndex());}
+        if(!peek(Kind.DEFAULT)){throw new ParseException("No Default Case", index());}
         list.add(parseCaseStatement());
-        if(!match("END")){throw new ParseException("No End", tokens.get(0).getIndex());}
+        if(!match(Kind.END)){throw new ParseException("No End", index());}
         return new Ast.Statement.Switch(expression, list);
     }
 
@@ -334,17 +848,17 @@ while(tokens.has(0)) {
      * default block of a switch statement, aka {@code CASE} or {@code DEFAULT}.
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
-        if(match("CASE")) {
+        if(match(Kind.CASE)) {
             Ast.Expression dog = parseExpression();
-            if(!match(":")){
-                throw new ParseException("No colon", tokens.get(0).getIndex());
+            if(!match(Kind.COLON)){
+                throw new ParseException("No colon", index());
             }
             return new Ast.Statement.Case(Optional.ofNullable(dog), parseBlock());
         }
-        else if(match("DEFAULT")) {
+        else if(match(Kind.DEFAULT)) {
             return new Ast.Statement.Case(Optional.empty(), parseBlock());
         }
-        throw new ParseException("Something went terribly wrong in the case statement", tokens.get(0).getIndex());//TODO
+        throw new ParseException("Something went terribly wrong in the case statement", index());//TODO
     }
 
     /**
@@ -353,20 +867,19 @@ while(tokens.has(0)) {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        if(peek(Token.Type.IDENTIFIER)){
+        if(tokens.has(0)){
             Ast.Expression condition = parseExpression();
-            if(!match("DO")){
-                if(tokens.has(0)){throw new ParseException("no Do", tokens.get(0).getIndex());}
+            if(!match(Kind.DO)){
+                if(tokens.has(0)){throw new ParseException("no Do", index());}
                 throw new ParseException("no Do", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
             List<Ast.Statement> statements = parseBlock();
-        if(!match("END")){
-            if(tokens.has(0))throw new ParseException("no end",tokens.get(0).getIndex() );
+        if(!match(Kind.END)){
+            if(tokens.has(0))throw new ParseException("no end",index() );
         else throw new ParseException("no end", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
 
         return new Ast.Statement.While(condition, statements);}
         else {
-            if(tokens.has(0)){throw new ParseException("no Identifier", tokens.get(0).getIndex());}
-            throw new ParseException("no Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            throw new ParseException("no condition after WHILE", index());
         }
 
     }
@@ -377,281 +890,314 @@ while(tokens.has(0)) {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        if(!peek(Token.Type.IDENTIFIER)){throw new ParseException("No Identifier after return", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
+        if(!tokens.has(0)){throw new ParseException("No expression after return", index());}
         return new Ast.Statement.Return(parseExpression()); //TODO
     }
 
     /**
-     * Parses the {@code expression} rule.
+     * Parses statements as {@link #parseBlock()}, the function body loop in
+     * {@link #parseFunction()}, or a single {@link #parseStatement()} would,
+     * depending on the kind of the root frame, but without recursing into
+     * nested {@code IF}, {@code WHILE}, and {@code SWITCH} statements. Each
+     * open statement is a {@link Frame} on an explicit stack which collects
+     * the statements of its current block, and is completed and added to the
+     * block of the frame below once that block ends.
      */
-    public Ast.Expression parseExpression() throws ParseException {
-
-            if (peek( "||") | peek( "&&") |peek(Token.Type.IDENTIFIER, "||") | peek(Token.Type.IDENTIFIER, "&&")) {
-                return parseLogicalExpression();
-            } else if (peek( "<") | peek( ">") | peek( "==") |  peek( "!=") | peek(Token.Type.IDENTIFIER, "<") | peek(Token.Type.IDENTIFIER, ">") | peek(Token.Type.IDENTIFIER, "==") | peek(Token.Type.IDENTIFIER, "!=")) {
-                return parseComparisonExpression();
-
-            } else if (peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") | peek( "-") | peek( "+")) {
-                    return parseAdditiveExpression();
-
-            } else if (peek( "*") | peek( "/") | peek( "^") | peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/") | peek(Token.Type.IDENTIFIER, "^")) {
-                return parseMultiplicativeExpression();
-            } else if (peek(Token.Type.IDENTIFIER) | peek(Token.Type.INTEGER) | peek(Token.Type.OPERATOR)| peek(Token.Type.DECIMAL) | peek(Token.Type.CHARACTER) | peek(Token.Type.STRING)) {
-                return parsePrimaryExpression();
+    private List<Ast.Statement> parseStatementsIteratively(Frame root) throws ParseException {
+        Deque<Frame> frames = new ArrayDeque<Frame>();
+        frames.push(root);
+        while(true){
+            Frame frame = frames.peek();
+            int start = tokens.index;
+            boolean closing = false;
+            try {
+                if(atEnd(frame)){
+                    if(frame == root){
+                        return root.statements;
+                    }
+                    closing = true;
+                    Ast.Statement statement = close(frame);
+                    if(statement != null){
+                        frames.pop();
+                        frames.peek().statements.add(statement);
+                    }
+                }
+                else if(frame.kind != Frame.Kind.STATEMENT && match(Kind.SEMICOLON)){
+                    continue;
+                }
+                else if(match(Kind.IF)){
+                    if(!tokens.has(0)){throw new ParseException("no condition after IF", index());}
+                    Ast.Expression condition = parseExpression();
+                    if(!match(Kind.DO)){throw new ParseException("NO Do", index());}
+                    frames.push(new Frame(Frame.Kind.IF, condition, start));
+                }
+                else if(match(Kind.WHILE)){
+                    if(!tokens.has(0)){throw new ParseException("no condition after WHILE", index());}
+                    Ast.Expression condition = parseExpression();
+                    if(!match(Kind.DO)){
+                        if(tokens.has(0)){throw new ParseException("no Do", index());}
+                        throw new ParseException("no Do", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
+                    frames.push(new Frame(Frame.Kind.WHILE, condition, start));
+                }
+                else if(match(Kind.SWITCH)){
+                    Frame child = new Frame(Frame.Kind.SWITCH, parseExpression(), start);
+                    openCase(child);
+                    frames.push(child);
+                }
+                else{
+                    frame.statements.add(parseStatement());
+                }
+            } catch (ParseException e) {
+                if(errors == null){
+                    throw e;
+                }
+                // as in parseStatementRecovering, a statement which fails to
+                // close is replaced as a whole in the enclosing block
+                errors.add(e);
+                if(closing){
+                    start = frames.pop().start;
+                }
+                synchronize(start, false);
+                frames.peek().statements.add(new Ast.Statement.Error(e.getMessage(), e.getIndex()));
             }
+        }
+    }
 
-        return previousExpression;
+    /**
+     * Returns true if the current block of the frame has ended. Function
+     * bodies only end at {@code END}, while every other block also ends at
+     * the keywords {@link #parseBlock()} stops at.
+     */
+    private boolean atEnd(Frame frame) {
+        switch (frame.kind) {
+            case BODY: return peek(Kind.END) || atTopLevel();
+            case STATEMENT: return !frame.statements.isEmpty();
+            default: return endsBlock() || atTopLevel();
+        }
     }
 
     /**
-     * Parses the {@code logical-expression} rule.
+     * Finishes the current block of the frame, returning the completed
+     * statement, or null if the frame has started another block such as an
+     * {@code ELSE} or the next {@code CASE}.
      */
-    public Ast.Expression parseLogicalExpression() throws ParseException {
-        String name = tokens.get(0).getLiteral();
-        if(!match(Token.Type.IDENTIFIER)){
-            if(match("&&")){
-                if(!tokens.has(0)){ throw new ParseException("no Identifier after Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && (peek(Token.Type.IDENTIFIER, "||") | peek(Token.Type.IDENTIFIER, "&&") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("&&", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
+    private Ast.Statement close(Frame frame) throws ParseException {
+        switch (frame.kind) {
+            case IF:
+                if(frame.thenStatements == null){
+                    frame.thenStatements = frame.statements;
+                    frame.statements = new ArrayList<Ast.Statement>();
+                    match(Kind.ELSE);
+                    return null;
                 }
-                return new Ast.Expression.Binary("&&", previousExpression, parseExpression());}
-            else if(match("||")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && (peek(Token.Type.IDENTIFIER, "||") | peek(Token.Type.IDENTIFIER, "&&") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("||", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
+                if(!match(Kind.END)){throw new ParseException("NO END", index());}
+                return new Ast.Statement.If(frame.condition, frame.thenStatements, frame.statements);
+            case WHILE:
+                if(!match(Kind.END)){
+                    if(tokens.has(0)){throw new ParseException("no end", index());}
+                    throw new ParseException("no end", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
+                return new Ast.Statement.While(frame.condition, frame.statements);
+            default:
+                frame.cases.add(new Ast.Statement.Case(frame.value, frame.statements));
+                if(!frame.value.isPresent()){
+                    if(!match(Kind.END)){throw new ParseException("No End", index());}
+                    return new Ast.Statement.Switch(frame.condition, frame.cases);
                 }
-                return new Ast.Expression.Binary("||", previousExpression, parseExpression());}
+                openCase(frame);
+                return null;
+        }
+    }
 
+    /**
+     * Starts the next case or default block of a switch frame, as in
+     * {@link #parseCaseStatement()}.
+     */
+    private void openCase(Frame frame) throws ParseException {
+        if(match(Kind.CASE)){
+            Ast.Expression value = parseExpression();
+            if(!match(Kind.COLON)){
+                throw new ParseException("No colon", index());
+            }
+            frame.value = Optional.ofNullable(value);
         }
-        if(match("&&")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && (peek(Token.Type.IDENTIFIER, "||") | peek(Token.Type.IDENTIFIER, "&&") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("&&", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary("&&", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match("||")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && (peek(Token.Type.IDENTIFIER, "||") | peek(Token.Type.IDENTIFIER, "&&") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("||", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary("||", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
+        else if(match(Kind.DEFAULT)){
+            frame.value = Optional.empty();
         }
-        else throw new ParseException("Something went wrong logically", tokens.get(0).getIndex() );
+        else throw new ParseException("No Default Case", index());
+        frame.statements = new ArrayList<Ast.Statement>();
+    }
+
+    /**
+     * Parses the {@code expression} rule.
+     */
+    public Ast.Expression parseExpression() throws ParseException {
+        return parseLogicalExpression();
+    }
+
+    /**
+     * Parses the {@code logical-expression} rule.
+     */
+    public Ast.Expression parseLogicalExpression() throws ParseException {
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        String name = tokens.get(0).getLiteral();
-        if( !match(Token.Type.IDENTIFIER)){
-            if(match("<")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("<", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary("<", previousExpression, parseExpression());}
-            else if (match(">")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary(">", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary(">", previousExpression, parseExpression());}
-            else if (match("==")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("==", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary("==", previousExpression, parseExpression());}
-            else if (match("!=")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("!=", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary("!=", previousExpression, parseExpression());}
-        }
-        if(match("<")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("<", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary("<", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match(">")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary(">", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary(">", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match("==")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("==", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary("==", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match("!=")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^")  | peek(Token.Type.IDENTIFIER, "+") | peek(Token.Type.IDENTIFIER, "-") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("!=", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();}
-            return new Ast.Expression.Binary("!=", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else throw new ParseException("Something went wrong Comparitively", tokens.get(0).getIndex());
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
+        return parseBinaryExpression(ADDITIVE);
+    }
 
-        String name = tokens.get(0).getLiteral();
-        if(!match(Token.Type.IDENTIFIER)){
-            if (match("-")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("-", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary("-", previousExpression, parseExpression());
-            }
-            else if (match("+")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^") )){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("+", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
-                }
-                return new Ast.Expression.Binary("+", previousExpression, parseExpression());
-            }
-        }
+    /**
+     * Parses the {@code multiplicative-expression} rule.
+     */
+    public Ast.Expression parseMultiplicativeExpression() throws ParseException {
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
 
-        if(match("+")){
-            if(!tokens.has(0)){throw new ParseException("No following Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();
-            }
-            return new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
+    /**
+     * Parses a chain of binary operators with at least the given precedence by
+     * precedence climbing. Operators of the same level are left associative,
+     * so each level loops rather than recursing, and recursion only goes one
+     * level deeper for each tighter operator on the right. This keeps both
+     * time and stack depth linear in the number of tokens regardless of how
+     * long a chain is.
+     */
+    private Ast.Expression parseBinaryExpression(int precedence) throws ParseException {
+        if(mode == Mode.ITERATIVE){
+            return parseBinaryExpressionIteratively(precedence);
         }
-        else if (match("-")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR) && !(peek(Token.Type.IDENTIFIER, "*") | peek(Token.Type.IDENTIFIER, "/")  | peek(Token.Type.IDENTIFIER, "^") )){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("-", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();
-            }
-            return new Ast.Expression.Binary("-", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
+        Ast.Expression left = parsePrimaryExpression();
+        int operator = precedence();
+        while (operator >= precedence) {
+            String literal = tokens.kind(0).literal;
+            tokens.advance();
+            Ast.Expression right = parseBinaryExpression(operator + 1);
+            left = new Ast.Expression.Binary(literal, left, right);
+            operator = precedence();
         }
-        else throw new ParseException("Something went wrong Additionally", tokens.get(0).getIndex());
+        return left;
     }
 
     /**
-     * Parses the {@code multiplicative-expression} rule.
+     * Parses the same expressions as {@link #parseBinaryExpression(int)} with
+     * explicit operand and operator stacks instead of recursion. Binary
+     * operators wait on the stack until an operator of lower or equal
+     * precedence arrives, which keeps them left associative, and an open
+     * group, call, index, or list waits until its closing token, so no amount
+     * of nesting grows the Java stack. The given precedence only limits
+     * operators outside of any brackets, as it would for the recursive parser.
      */
-    public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        String name = tokens.get(0).getLiteral();
-        if(!match(Token.Type.IDENTIFIER)){
-            if(match("*")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("*", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
+    private Ast.Expression parseBinaryExpressionIteratively(int precedence) throws ParseException {
+        Deque<Ast.Expression> operands = new ArrayDeque<Ast.Expression>();
+        Deque<Pending> pending = new ArrayDeque<Pending>();
+        int brackets = 0;
+        boolean operand = true;
+        while(true){
+            if(operand){
+                if(match(Kind.OPEN_PAREN)){
+                    pending.push(new Pending(Pending.Kind.GROUP, "(", -1));
+                    brackets++;
+                    continue;
                 }
-                return new Ast.Expression.Binary("*", previousExpression, parseExpression());
-            }
-            if(match("^")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                    String name1 = tokens.get(0).getLiteral();
-                    match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("^", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
+                else if(match(Kind.OPEN_BRACKET)){
+                    if(peek(Kind.CLOSE_BRACKET)){throw new ParseException("Trailing Comma", index());}
+                    pending.push(new Pending(Pending.Kind.LIST, "[", -1));
+                    brackets++;
+                    continue;
                 }
-                return new Ast.Expression.Binary("^", previousExpression, parseExpression());
-            }
-            if(match("/")){
-                if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-                if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                    String name1 = tokens.get(0).getLiteral();
+                else if(peek(Token.Type.IDENTIFIER) && !peek(Kind.TRUE) && !peek(Kind.FALSE) && !peek(Kind.NIL)){
+                    String name = tokens.get(0).getLiteral();
                     match(Token.Type.IDENTIFIER);
-                    previousExpression = new Ast.Expression.Binary("/", previousExpression, new Ast.Expression.Access(Optional.empty(), name1));
-                    return parseExpression();
+                    if(match(Kind.OPEN_PAREN)){
+                        if(!match(Kind.CLOSE_PAREN)){
+                            pending.push(new Pending(Pending.Kind.CALL, name, -1));
+                            brackets++;
+                            continue;
+                        }
+                        operands.push(new Ast.Expression.Function(name, new ArrayList<Ast.Expression>()));
+                    }
+                    else if(match(Kind.OPEN_BRACKET)){
+                        pending.push(new Pending(Pending.Kind.INDEX, name, -1));
+                        brackets++;
+                        continue;
+                    }
+                    else{
+                        operands.push(new Ast.Expression.Access(Optional.empty(), name));
+                    }
                 }
-                return new Ast.Expression.Binary("/", previousExpression, parseExpression());
+                else{
+                    operands.push(parsePrimaryExpression());
+                }
+                operand = false;
+                continue;
             }
-        }
-        if(match("*")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("*", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();
+            int operator = precedence();
+            if(operator >= 0 && (brackets > 0 || operator >= precedence)){
+                reduce(operands, pending, operator);
+                pending.push(new Pending(Pending.Kind.OPERATOR, tokens.kind(0).literal, operator));
+                tokens.advance();
+                operand = true;
+                continue;
             }
-            return new Ast.Expression.Binary("*", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match("/")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("/", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();
+            reduce(operands, pending, LOGICAL);
+            if(pending.isEmpty()){
+                return operands.pop();
             }
-            return new Ast.Expression.Binary("/", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-        }
-        else if (match("^")){
-            if(!tokens.has(0)){throw new ParseException("no Identifier After Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());}
-            if(peek(Token.Type.IDENTIFIER, Token.Type.OPERATOR)){
-                String name1 = tokens.get(0).getLiteral();
-                match(Token.Type.IDENTIFIER);
-                previousExpression = new Ast.Expression.Binary("^", new Ast.Expression.Access(Optional.empty(), name), new Ast.Expression.Access(Optional.empty(), name1));
-                return parseExpression();
+            Pending bracket = pending.pop();
+            switch (bracket.kind) {
+                case GROUP:
+                    if(!match(Kind.CLOSE_PAREN)){throw new ParseException("No Closing par", index());}
+                    operands.push(new Ast.Expression.Group(operands.pop()));
+                    break;
+                case INDEX:
+                    if(!match(Kind.CLOSE_BRACKET)){throw new ParseException("No Closing bracket", index());}
+                    operands.push(new Ast.Expression.Access(Optional.of(operands.pop()), bracket.literal));
+                    break;
+                default:
+                    Kind close = bracket.kind == Pending.Kind.CALL ? Kind.CLOSE_PAREN : Kind.CLOSE_BRACKET;
+                    bracket.arguments.add(operands.pop());
+                    if(match(Kind.COMMA)){
+                        if(peek(close)){throw new ParseException("Trailing Comma", index());}
+                        pending.push(bracket);
+                        operand = true;
+                        continue;
+                    }
+                    if(!match(close)){throw new ParseException("No Closing " + close.literal, index());}
+                    operands.push(bracket.kind == Pending.Kind.CALL
+                            ? new Ast.Expression.Function(bracket.literal, bracket.arguments)
+                            : new Ast.Expression.PlcList(bracket.arguments));
             }
-            return new Ast.Expression.Binary("^", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
+            brackets--;
+        }
+    }
+
+    /**
+     * Pops every binary operator at the top of the stack with at least the
+     * given precedence, combining it with its two operands.
+     */
+    private static void reduce(Deque<Ast.Expression> operands, Deque<Pending> pending, int precedence) {
+        while(!pending.isEmpty() && pending.peek().kind == Pending.Kind.OPERATOR && pending.peek().precedence >= precedence){
+            Ast.Expression right = operands.pop();
+            Ast.Expression left = operands.pop();
+            operands.push(new Ast.Expression.Binary(pending.pop().literal, left, right));
         }
-        else throw new ParseException("Something went wrong Multilicatively", tokens.get(0).getIndex() +1);
+    }
+
+    /**
+     * Returns the precedence of the binary operator at the current token, or
+     * -1 if it is not a binary operator. Operators are classified by literal,
+     * so {@code &&} and {@code ||} are recognized however they were lexed.
+     */
+    private int precedence() {
+        return tokens.has(0) ? tokens.kind(0).precedence : -1;
     }
 
     /**
@@ -661,215 +1207,143 @@ while(tokens.has(0)) {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if(peek("TRUE")){
-            match("TRUE");
-            return new Ast.Expression.Literal(Boolean.TRUE);
-        }
-        else if(peek("FALSE")){
-            match("FALSE");
-            return new Ast.Expression.Literal(Boolean.FALSE);
-        }
-        else if(peek("NIL")){
-            match("NIL");
-            return new Ast.Expression.Literal(null);
-        }
-        else if(peek(Token.Type.DECIMAL)){
-            BigDecimal ant = new BigDecimal(tokens.get(0).getLiteral());
-            match(Token.Type.DECIMAL);
-            return new Ast.Expression.Literal( ant );
-        }
-        else if(peek(Token.Type.INTEGER)){
-            BigInteger ant = new BigInteger(tokens.get(0).getLiteral());
-            match(Token.Type.INTEGER);
-            return new Ast.Expression.Literal( ant );
-        }
-        else if(peek(Token.Type.CHARACTER)){
-            char c = tokens.get(0).getLiteral().charAt(1);
-            if(c == '\\'){
-                String string = "" + c + tokens.get(0).getLiteral().charAt(2);
-                switch (string) {
-                    case "\\t": {
-                        c = '\t';
-                        break;
-                    }
-                    case "\\b": {
-                        c = '\b';
-                        break;
-                    }
-                    case "\\n": {
-                        c = '\n';
-                        break;
-                    }
-                    case "\\r": {
-                        c = '\r';
-                        break;
-                    }
-                    case "\\\"": {
-                        c = '\"';
-                        break;
-                    }
-                    case "\\\'": {
-                        c = '\'';
-                        break;
-                    }
-                    case "\\\\": {
-                        c = '\\';
-                        break;
-                    }
-                }
+        if(!tokens.has(0)){
+            throw new ParseException("Expected expression", index());
+        }
+        switch (tokens.kind(0)) {
+            case TRUE:
+                tokens.advance();
+                return new Ast.Expression.Literal(Boolean.TRUE);
+            case FALSE:
+                tokens.advance();
+                return new Ast.Expression.Literal(Boolean.FALSE);
+            case NIL:
+                tokens.advance();
+                return new Ast.Expression.Literal(null);
+            case DECIMAL: {
+                BigDecimal ant = new BigDecimal(tokens.getLiteral(0));
+                tokens.advance();
+                return new Ast.Expression.Literal( ant );
             }
-            match(Token.Type.CHARACTER);
-            return new Ast.Expression.Literal( c );
-        }
-        else if(peek(Token.Type.STRING)){
-            String string = "";
-            String chara = "";
-            char c = '\\';
-            for(int i = 1; i < tokens.get(0).getLiteral().length() -1; i++){
-                if(tokens.get(0).getLiteral().charAt(i) == '\\'){
-                    chara = "" + tokens.get(0).getLiteral().charAt(i) + tokens.get(0).getLiteral().charAt(i+1);
-                    i++;
-                    switch (chara){
-                        case "\\t":{
-                          c = '\t';
-                          break;
-                        }
-                        case "\\b":{
-                            c = '\b';
-                            break;
-                        }case "\\n":{
-                            c = '\n';
-                            break;
-                        }
-                        case "\\r":{
-                            c = '\r';
-                            break;
-                        }
-                        case "\\\'":{
-                            c = '\'';
-                            break;
-                        }case "\\\"":{
-                            c = '\"';
-                            break;
-                        }case "\\\\":{
-                            c = '\\';
-                            break;
-                        }
-
-                    }
-                    string = string + c;
-                    chara = "";
+            case INTEGER: {
+                BigInteger ant = new BigInteger(tokens.getLiteral(0));
+                tokens.advance();
+                return new Ast.Expression.Literal( ant );
+            }
+            case CHARACTER: {
+                char c = tokens.charAt(0, 1);
+                if(c == '\\'){
+                    c = unescape(tokens.charAt(0, 2));
                 }
-                else{
-                    string = string + tokens.get(0).getLiteral().charAt(i);
+                tokens.advance();
+                return new Ast.Expression.Literal( c );
+            }
+            case STRING: {
+                String string = parseString();
+                tokens.advance();
+                return new Ast.Expression.Literal( string );
+            }
+            case OPEN_PAREN: {
+                tokens.advance();
+                Ast.Expression expression = parseExpression();
+                if(!match(Kind.CLOSE_PAREN)){
+                    throw new ParseException("No Closing par", index());
                 }
+                return new Ast.Expression.Group(expression);
             }
-            match(Token.Type.STRING);
-            return new Ast.Expression.Literal( string );
+            case OPEN_BRACKET:
+                tokens.advance();
+                return new Ast.Expression.PlcList(parseArguments(Kind.CLOSE_BRACKET));
         }
-        else if(peek(Token.Type.OPERATOR)){
-            if(peek("(")) {
-                //match("(");
-                List<Ast.Expression> list = new ArrayList<Ast.Expression>();
-                match("(");
-
-                if(tokens.has(1) && !peek(")")){
-                    while(!peek(")")){
-                        list.add(parseExpression());
-                    }
-                }
-                if(match(")")){ previousExpression = new Ast.Expression.Group(list.get(0));
-                    return previousExpression;}
-                else throw new ParseException("No CLosing par", tokens.get(-1).getIndex() +tokens.get(-1).getLiteral().length());
-            }
-            if(peek(")")){return previousExpression;}
-            if(peek("]")){return previousExpression;}
-            if(peek("[")) {
-                match("[");
-                List<Ast.Expression> list = new ArrayList<Ast.Expression>();
-
-                if(tokens.has(1) && !peek(")")){
-                    while(!peek("]")){
-                        list.add(parseExpression());
-                    }
+        if (peek(Token.Type.IDENTIFIER)){
+            String name = tokens.getLiteral(0);
+            tokens.advance();
+            if(match(Kind.OPEN_PAREN)){
+                if(match(Kind.CLOSE_PAREN)){
+                    return new Ast.Expression.Function(name, new ArrayList<Ast.Expression>());
                 }
-                if(match("]")){previousExpression = new Ast.Expression.PlcList(list);
-                return previousExpression;}
-                else throw new ParseException("No CLosing par", tokens.get(-1).getIndex() +tokens.get(-1).getLiteral().length());
+                return new Ast.Expression.Function(name, parseArguments(Kind.CLOSE_PAREN));
             }
-            if(peek(";")){
-                return previousExpression;
+            else if(match(Kind.OPEN_BRACKET)){
+                Ast.Expression offset = parseExpression();
+                if(!match(Kind.CLOSE_BRACKET)){
+                    throw new ParseException("No Closing bracket", index());
+                }
+                return new Ast.Expression.Access(Optional.of(offset), name);
             }
-            match(Token.Type.OPERATOR);
-            return parseExpression();
+            return new Ast.Expression.Access(Optional.empty(), name);
         }
+        throw new ParseException("Not A Primary Expression", index());
+    }
 
-        else if (peek(Token.Type.IDENTIFIER)){
-            String name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER);
-            if(peek(Token.Type.OPERATOR)){
-                if(peek("(")){
-                    List<Ast.Expression> list = new ArrayList<Ast.Expression>();
-                    match("(");
-
-                    if(tokens.has(1) && !peek(")")){
-                    while(!peek(")")){
-                        list.add(parseExpression());
-                    }
-                    }
-                    if(match(")")){return new Ast.Expression.Function(name, list);}
-                    else throw new ParseException("No CLosing par", tokens.get(-1).getIndex() +tokens.get(-1).getLiteral().length());
-
-                }
-                else if(peek("=")){
-                    return new Ast.Expression.Access(Optional.empty(), name);
-                }
-                else if(peek("[")){
-                    match("[");
-                    List<Ast.Expression> list = new ArrayList<Ast.Expression>();
-                    //match("(");
-
-                    if(tokens.has(1) && !peek("]")){
-                        while(!peek("]")){
-                            list.add(parseExpression());
-                        }
-                    }
-                    if(match("]")){ previousExpression = new Ast.Expression.Access(java.util.Optional.ofNullable(list.get(0)), name);
-                        return previousExpression;}
-                    else throw new ParseException("No CLosing par", tokens.get(-1).getIndex() +tokens.get(-1).getLiteral().length());
-
-                }
-                else if(peek("+")){
-                    match("+");
-                    return new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-                }
-                else if(peek("&&")){
-                    match("&&");
-                    return new Ast.Expression.Binary("&&", new Ast.Expression.Access(Optional.empty(), name), parseExpression());
-                }
-                else if(peek(",")){
-                    if(peek(",", Token.Type.IDENTIFIER)){
-                        return new Ast.Expression.Access( Optional.empty(), name);
-                    }
-                    else{ throw new ParseException("Trailing Comma", tokens.get(0).getIndex());}
-                    }
-                else if(peek("]")){
-                    //match("]", ";");
-                    return new Ast.Expression.Access(Optional.empty(), name);
-                }
-                else{
-                    return new Ast.Expression.Access(Optional.empty(), name);
-
-                }
-            }
-            else{
-                return new Ast.Expression.Access(Optional.empty(), name);
+    /**
+     * Parses one or more comma separated expressions followed by the given
+     * closing token, for function arguments and list literals.
+     */
+    private List<Ast.Expression> parseArguments(Kind close) throws ParseException {
+        List<Ast.Expression> arguments = new ArrayList<Ast.Expression>();
+        do {
+            if(peek(close)){
+                throw new ParseException("Trailing Comma", index());
             }
+            arguments.add(parseExpression());
+        } while(match(Kind.COMMA));
+        if(!match(close)){
+            throw new ParseException("No Closing " + close.literal, index());
+        }
+        return arguments;
+    }
 
+    /**
+     * Decodes the string literal of the current token. The literal is read in
+     * place and measured first, so the only allocation is the exactly sized
+     * result.
+     */
+    private String parseString() {
+        int end = tokens.getLength(0) - 1;
+        int length = 0;
+        for (int i = 1; i < end; i++, length++) {
+            if (tokens.charAt(0, i) == '\\') {
+                i++;
+            }
+        }
+        char[] chars = new char[length];
+        for (int i = 1, j = 0; i < end; i++) {
+            char c = tokens.charAt(0, i);
+            chars[j++] = c == '\\' ? unescape(tokens.charAt(0, ++i)) : c;
+        }
+        return new String(chars);
+    }
 
+    /**
+     * Returns the character an escape in a string or character literal stands
+     * for, given the character after the backslash. Anything the lexer would
+     * not accept, like a second backslash, is left as a backslash.
+     */
+    private static char unescape(char c) {
+        switch (c) {
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case '\'': return '\'';
+            case '"': return '"';
+            default: return '\\';
+        }
+    }
 
+    /**
+     * Returns the index of the current token, or the index just past the end
+     * of the last token if there are none left, for reporting errors.
+     */
+    private int index() {
+        if(tokens.has(0)){
+            return tokens.get(0).getIndex();
+        }
+        else if(tokens.index > 0){
+            return tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
         }
-    throw new ParseException("Not A Primary Expression", tokens.get(0).getIndex());
+        return 0;
     }
 
     /**
@@ -889,12 +1363,12 @@ while(tokens.has(0)) {
                return false;
            }
            else if(patterns[i] instanceof Token.Type){
-               if(patterns[i] != tokens.get(i).getType()){
+               if(patterns[i] != tokens.getType(i)){
                    return false;
                }
            }
            else if(patterns[i] instanceof String){
-               if(!patterns[i].equals(tokens.get(i).getLiteral())){
+               if(!tokens.hasLiteral(i, (String) patterns[i])){
                    return false;
                }
            }
@@ -920,27 +1394,396 @@ while(tokens.has(0)) {
         return peek;
     }
 
+    /**
+     * Returns {@code true} if the current token is of the given kind. This is
+     * the same as {@link #peek(Object...)} with the kind's literal or type,
+     * but compares the token's precomputed {@link Kind} instead.
+     */
+    private boolean peek(Kind kind) {
+        return tokens.has(0) && tokens.kind(0) == kind;
+    }
+
+    /**
+     * Returns {@code true} if the current token has the given type, as
+     * {@link #peek(Object...)} would without allocating the patterns.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(Kind)} is true and advances the
+     * token stream.
+     */
+    private boolean match(Kind kind) {
+        boolean peek = peek(kind);
+        if(peek){
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(Token.Type)} is true and advances
+     * the token stream.
+     */
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if(peek){
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * The kind of a token for selecting rules. Every keyword and operator the
+     * grammar names has its own kind, and any other token is classified by
+     * its type. {@link TokenStream#kind(int)} classifies each token once with
+     * the tables below, so choosing between rules is a single comparison or
+     * switch instead of comparing literals for each alternative.
+     */
+    private enum Kind {
+        LET, VAR(Role.DECLARATION), VAL(Role.DECLARATION), FUN(Role.DECLARATION), DO(Role.BLOCK_END),
+        END(Role.BLOCK_END), IF, ELSE(Role.BLOCK_END), WHILE, SWITCH, CASE(Role.BLOCK_END),
+        DEFAULT(Role.BLOCK_END), RETURN, TRUE, FALSE, NIL, LIST(Role.DECLARATION),
+        OPEN_PAREN("("), CLOSE_PAREN(")"), OPEN_BRACKET("["), CLOSE_BRACKET("]"),
+        COMMA(","), SEMICOLON(";"), COLON(":"), EQUALS("="),
+        AND("&&", LOGICAL), OR("||", LOGICAL),
+        LESS("<", COMPARISON), GREATER(">", COMPARISON), EQUAL("==", COMPARISON), NOT_EQUAL("!=", COMPARISON),
+        PLUS("+", ADDITIVE), MINUS("-", ADDITIVE),
+        TIMES("*", MULTIPLICATIVE), DIVIDE("/", MULTIPLICATIVE), POWER("^", MULTIPLICATIVE),
+        IDENTIFIER(Token.Type.IDENTIFIER), INTEGER(Token.Type.INTEGER), DECIMAL(Token.Type.DECIMAL),
+        CHARACTER(Token.Type.CHARACTER), STRING(Token.Type.STRING), OPERATOR(Token.Type.OPERATOR);
+
+        private enum Role {
+            NONE,
+            DECLARATION,
+            BLOCK_END
+        }
+
+        /**
+         * Keyword kinds indexed by the keyword's symbol id.
+         */
+        private static final Kind[] KEYWORDS = new Kind[SymbolTable.keywordCount()];
+
+        /**
+         * Single character operator kinds indexed by character.
+         */
+        private static final Kind[] ASCII = new Kind[128];
+
+        /**
+         * The kinds of tokens which are not keywords or named operators,
+         * indexed by type.
+         */
+        private static final Kind[] TYPES = new Kind[Token.Type.values().length];
+
+        private static final Map<String, Kind> LITERALS = new HashMap<>();
+
+        static {
+            for (Kind kind : values()) {
+                if (kind.type != null) {
+                    TYPES[kind.type.ordinal()] = kind;
+                    continue;
+                }
+                LITERALS.put(kind.literal, kind);
+                int keyword = SymbolTable.keyword(kind.literal);
+                if (keyword != SymbolTable.NONE) {
+                    KEYWORDS[keyword] = kind;
+                } else if (kind.literal.length() == 1) {
+                    ASCII[kind.literal.charAt(0)] = kind;
+                }
+            }
+        }
+
+        /**
+         * The literal of a keyword or operator, or null for other kinds.
+         */
+        private final String literal;
+        /**
+         * The type of a kind for tokens which are not keywords or named
+         * operators, or null for other kinds.
+         */
+        private final Token.Type type;
+        private final int precedence;
+        private final boolean declaration;
+        private final boolean endsBlock;
+
+        Kind() {
+            this(Role.NONE);
+        }
+
+        Kind(Role role) {
+            this.literal = name();
+            this.type = null;
+            this.precedence = -1;
+            this.declaration = role == Role.DECLARATION;
+            this.endsBlock = role == Role.BLOCK_END;
+        }
+
+        Kind(String literal) {
+            this(literal, -1);
+        }
+
+        Kind(String literal, int precedence) {
+            this.literal = literal;
+            this.type = null;
+            this.precedence = precedence;
+            this.declaration = false;
+            this.endsBlock = false;
+        }
+
+        Kind(Token.Type type) {
+            this.literal = null;
+            this.type = type;
+            this.precedence = -1;
+            this.declaration = false;
+            this.endsBlock = false;
+        }
+
+        /**
+         * Returns the kind of an identifier interned as the given symbol.
+         */
+        private static Kind ofSymbol(int symbol) {
+            return SymbolTable.isKeyword(symbol) ? KEYWORDS[symbol] : IDENTIFIER;
+        }
+
+        /**
+         * Returns the kind of the given literal, or the fallback if it is not
+         * a keyword or named operator.
+         */
+        private static Kind ofLiteral(String literal, Kind fallback) {
+            Kind kind = LITERALS.get(literal);
+            return kind != null ? kind : fallback;
+        }
+
+    }
+
+    /**
+     * The bounds of a global or function found by {@link #declarations()}, as
+     * the index of its first token and the index just past its last token.
+     */
+    private static final class Declaration {
+
+        private final int start;
+        private int end;
+        private final boolean function;
+
+        private Declaration(int start, boolean function) {
+            this.start = start;
+            this.function = function;
+        }
+
+    }
+
+    /**
+     * A statement being parsed by {@link #parseStatementsIteratively(Frame)},
+     * or the block it was called for. The start is the position of the token
+     * the statement began at, for recovering from errors.
+     */
+    private static final class Frame {
+
+        private enum Kind {
+            BODY,
+            BLOCK,
+            STATEMENT,
+            IF,
+            WHILE,
+            SWITCH
+        }
+
+        private final Kind kind;
+        private final Ast.Expression condition;
+        private final int start;
+        private List<Ast.Statement> statements = new ArrayList<Ast.Statement>();
+        private List<Ast.Statement> thenStatements;
+        private final List<Ast.Statement.Case> cases = new ArrayList<Ast.Statement.Case>();
+        private Optional<Ast.Expression> value;
+
+        private Frame(Kind kind, Ast.Expression condition, int start) {
+            this.kind = kind;
+            this.condition = condition;
+            this.start = start;
+        }
+
+    }
+
+    /**
+     * A binary operator or open bracket waiting for the rest of its operands
+     * in {@link #parseBinaryExpressionIteratively(int)}. The literal is the
+     * operator, or the name of the function being called or list being
+     * indexed.
+     */
+    private static final class Pending {
+
+        private enum Kind {
+            OPERATOR,
+            GROUP,
+            CALL,
+            INDEX,
+            LIST
+        }
+
+        private final Kind kind;
+        private final String literal;
+        private final int precedence;
+        private final List<Ast.Expression> arguments;
+
+        private Pending(Kind kind, String literal, int precedence) {
+            this.kind = kind;
+            this.literal = literal;
+            this.precedence = precedence;
+            this.arguments = kind == Kind.CALL || kind == Kind.LIST ? new ArrayList<Ast.Expression>() : null;
+        }
+
+    }
+
+    /**
+     * When given a {@link TokenBuffer}, lookahead goes through a buffer cursor
+     * so that {@link #peek(Object...)} never needs to create token objects.
+     */
     private static final class TokenStream {
 
+        /**
+         * The number of tokens a stream over an iterator consumes between
+         * dropping those it has passed.
+         */
+        private static final int WINDOW_SIZE = 1024;
+
         private final List<Token> tokens;
-        private int index = 0;
+        private final Iterator<Token> iterator;
+        private final TokenBuffer.Cursor cursor;
+        private final int end;
+        private int index;
+        private int base = 0;
+        private int kindIndex = -1;
+        private Kind kind;
 
-        private TokenStream(List<Token> tokens) {
+        /**
+         * Creates a stream over the tokens from {@code start} up to but
+         * excluding {@code end}, which the stream treats as the end of input.
+         */
+        private TokenStream(List<Token> tokens, int start, int end) {
             this.tokens = tokens;
+            this.iterator = null;
+            this.cursor = tokens instanceof TokenBuffer ? ((TokenBuffer) tokens).cursor() : null;
+            this.end = end;
+            seek(start);
+        }
+
+        /**
+         * Creates a stream which pulls tokens from the iterator into a window
+         * as they are looked at. Tokens before the previous one are dropped
+         * as the stream advances, so {@link #get(int)} may only look one token
+         * back and {@link #seek(int)} is not supported.
+         */
+        private TokenStream(Iterator<Token> iterator) {
+            this.tokens = new ArrayList<>();
+            this.iterator = iterator;
+            this.cursor = null;
+            this.end = Integer.MAX_VALUE;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            if (iterator == null) {
+                return index + offset < end;
+            }
+            while (index + offset - base >= tokens.size() && iterator.hasNext()) {
+                tokens.add(iterator.next());
+            }
+            return index + offset - base < tokens.size();
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            if (iterator != null) {
+                has(offset);
+            }
+            return tokens.get(index + offset - base);
+        }
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type getType(int offset) {
+            return cursor != null ? cursor.getType(offset) : get(offset).getType();
+        }
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public String getLiteral(int offset) {
+            return cursor != null ? cursor.getLiteral(offset) : get(offset).getLiteral();
+        }
+
+        /**
+         * Gets the kind of the token at index + offset. The kind of the
+         * current token is cached, since several rules may check it in turn.
+         */
+        public Kind kind(int offset) {
+            if (offset == 0 && kindIndex == index) {
+                return kind;
+            }
+            Kind result = classify(offset);
+            if (offset == 0) {
+                kindIndex = index;
+                kind = result;
+            }
+            return result;
+        }
+
+        private Kind classify(int offset) {
+            Token.Type type = getType(offset);
+            if (type == Token.Type.IDENTIFIER) {
+                int symbol = cursor != null ? cursor.getSymbol(offset) : get(offset).getSymbol();
+                if (symbol != SymbolTable.NONE) {
+                    return Kind.ofSymbol(symbol);
+                }
+                return Kind.ofLiteral(getLiteral(offset), Kind.IDENTIFIER);
+            } else if (type == Token.Type.OPERATOR) {
+                int length = getLength(offset);
+                if (length == 1) {
+                    char c = charAt(offset, 0);
+                    Kind kind = c < Kind.ASCII.length ? Kind.ASCII[c] : null;
+                    return kind != null ? kind : Kind.OPERATOR;
+                }
+                return length == 2 ? Kind.ofLiteral(getLiteral(offset), Kind.OPERATOR) : Kind.OPERATOR;
+            }
+            return Kind.TYPES[type.ordinal()];
+        }
+
+        /**
+         * Gets the length of the literal of the token at index + offset.
+         */
+        public int getLength(int offset) {
+            return cursor != null ? cursor.getLength(offset) : get(offset).getLength();
+        }
+
+        /**
+         * Gets a character of the literal of the token at index + offset
+         * without copying the literal.
+         */
+        public char charAt(int offset, int index) {
+            return cursor != null ? cursor.charAt(offset, index) : get(offset).charAt(index);
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to the given literal. Keywords are compared by symbol id when the
+         * token was interned by the lexer.
+         */
+        public boolean hasLiteral(int offset, String literal) {
+            int symbol = cursor != null ? cursor.getSymbol(offset) : get(offset).getSymbol();
+            if (symbol != SymbolTable.NONE) {
+                int keyword = SymbolTable.keyword(literal);
+                if (keyword != SymbolTable.NONE) {
+                    return symbol == keyword;
+                }
+            }
+            return cursor != null ? cursor.hasLiteral(offset, literal) : literal.equals(get(offset).getLiteral());
         }
 
         /**
@@ -948,6 +1791,23 @@ while(tokens.has(0)) {
          */
         public void advance() {
             index++;
+            if (cursor != null) {
+                cursor.advance();
+            }
+            if (iterator != null && index - base > WINDOW_SIZE) {
+                tokens.subList(0, index - base - 1).clear();
+                base = index - 1;
+            }
+        }
+
+        /**
+         * Moves to the token at the given index.
+         */
+        public void seek(int index) {
+            this.index = index;
+            if (cursor != null) {
+                cursor.seek(index);
+            }
         }
 
     }
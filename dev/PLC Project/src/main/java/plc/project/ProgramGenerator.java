@@ -0,0 +1,580 @@
+package plc.project;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates random, well-typed PLC programs for scale and stress testing,
+ * either as an {@link Ast.Source} or as source text printed with {@link
+ * SourcePrinter}. Generation is fully determined by the seed and settings.
+ *
+ * Every variable is declared before it is used with a value of its declared
+ * type, functions only call functions defined before them, divisors are
+ * non-zero literals, and every {@code WHILE} loop counts a fresh counter up
+ * to a small bound, so generated programs always terminate. Binary
+ * expressions are grouped explicitly wherever the tree differs from the
+ * operator precedence, so printing and parsing a program gives back the same
+ * tree.
+ *
+ * A program ends with a {@code main} function that calls every other
+ * function, so running it runs all of the generated code. Since a function
+ * runs in the scope of its caller in the interpreter, a block never calls two
+ * functions that would define the same variables in its scope, and the
+ * condition of an {@code IF}, which may be evaluated twice, calls nothing.
+ *
+ * Each function makes a bounded number of calls in total, and every value is
+ * computed from a bounded number of literals, its weight, so that numbers
+ * and strings stay small. A variable is only assigned values no heavier than
+ * its initial value, so values cannot grow with each iteration of a loop or
+ * along a chain of declarations.
+ */
+public final class ProgramGenerator {
+
+    private static final List<String> OPERATORS = Arrays.asList(
+            "&&", "||", "<", ">", "==", "!=", "+", "-", "*", "/", "^");
+
+    /**
+     * The most calls a call to a generated function may lead to, counting
+     * those made by its callees and each iteration of a loop, so that the
+     * time to run a program grows with its size rather than exponentially.
+     */
+    private static final int CALLS = 64;
+
+    /**
+     * The heaviest value an expression may compute, and the heaviest value
+     * passed as an argument.
+     */
+    private static final int WEIGHT = 64;
+    private static final int ARGUMENT = 8;
+
+    private enum Type {
+        INTEGER("Integer"),
+        DECIMAL("Decimal"),
+        BOOLEAN("Boolean"),
+        STRING("String"),
+        CHARACTER("Character");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+    }
+
+    private static final class Variable {
+
+        private final String name;
+        private final Type type;
+        private final boolean mutable;
+        private final int size;
+        private final int weight;
+
+        private Variable(String name, Type type, boolean mutable, int size, int weight) {
+            this.name = name;
+            this.type = type;
+            this.mutable = mutable;
+            this.size = size;
+            this.weight = weight;
+        }
+
+    }
+
+    private static final class Signature {
+
+        private final String name;
+        private final List<Type> parameters;
+        private final Type returnType;
+        private final Set<String> footprint;
+        private final int calls;
+        private final int weight;
+
+        /**
+         * Creates a signature whose footprint holds the functions that
+         * define variables in the scope of the caller when it is called: the
+         * function itself and those called directly in its body. A call leads
+         * to the given number of calls including itself, and returns a value
+         * of at most the given weight.
+         */
+        private Signature(String name, List<Type> parameters, Type returnType, Set<String> footprint, int calls, int weight) {
+            this.name = name;
+            this.parameters = parameters;
+            this.returnType = returnType;
+            this.footprint = footprint;
+            this.calls = calls;
+            this.weight = weight;
+        }
+
+    }
+
+    private final Random random;
+    private int globals = 8;
+    private int functions = 8;
+    private int statements = 6;
+    private int depth = 3;
+    private int nesting = 2;
+    private List<String> operators = OPERATORS;
+
+    private final List<List<Variable>> variables = new ArrayList<>();
+    private final List<List<Variable>> assignable = new ArrayList<>();
+    private final List<Variable> lists = new ArrayList<>();
+    private final List<Signature> signatures = new ArrayList<>();
+    private Set<String> called = new HashSet<>();
+    private int cost = 0;
+    private int iterations = 1;
+    private boolean calls = true;
+    private int weight = 0;
+    private int limit = WEIGHT;
+    private int names = 0;
+
+    public ProgramGenerator(long seed) {
+        this.random = new Random(seed);
+        for (int i = 0; i < Type.values().length; i++) {
+            variables.add(new ArrayList<>());
+            assignable.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Sets the number of top-level globals.
+     */
+    public ProgramGenerator setGlobals(int globals) {
+        this.globals = globals;
+        return this;
+    }
+
+    /**
+     * Sets the number of top-level functions.
+     */
+    public ProgramGenerator setFunctions(int functions) {
+        this.functions = functions;
+        return this;
+    }
+
+    /**
+     * Sets the number of statements in each block, including function bodies.
+     */
+    public ProgramGenerator setStatements(int statements) {
+        this.statements = statements;
+        return this;
+    }
+
+    /**
+     * Sets the maximum depth of nested expressions.
+     */
+    public ProgramGenerator setDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * Sets the maximum depth of nested {@code IF}, {@code SWITCH}, and
+     * {@code WHILE} blocks.
+     */
+    public ProgramGenerator setNesting(int nesting) {
+        this.nesting = nesting;
+        return this;
+    }
+
+    /**
+     * Sets the binary operators to generate. Operators may be repeated to make
+     * them more likely; those left out are only used by loop counters.
+     */
+    public ProgramGenerator setOperators(String... operators) {
+        for (String operator : operators) {
+            if (!OPERATORS.contains(operator)) {
+                throw new IllegalArgumentException("Unknown operator " + operator + ".");
+            }
+        }
+        this.operators = Arrays.asList(operators);
+        return this;
+    }
+
+    /**
+     * Generates the next program. Each call continues the same random
+     * sequence, so a generator with the same seed and settings produces the
+     * same sequence of programs.
+     */
+    public Ast.Source generate() {
+        for (int i = 0; i < variables.size(); i++) {
+            variables.get(i).clear();
+            assignable.get(i).clear();
+        }
+        lists.clear();
+        signatures.clear();
+        names = 0;
+        List<Ast.Global> globals = new ArrayList<>();
+        for (int i = 0; i < this.globals; i++) {
+            globals.add(global());
+        }
+        List<Ast.Function> functions = new ArrayList<>();
+        for (int i = 0; i < this.functions; i++) {
+            functions.add(function());
+        }
+        functions.add(main());
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Generates the next program as in {@link #generate()} and prints it as
+     * source.
+     */
+    public String generateSource() {
+        StringWriter writer = new StringWriter();
+        new SourcePrinter(new PrintWriter(writer)).visit(generate());
+        return writer.toString();
+    }
+
+    private Ast.Global global() {
+        if (random.nextInt(6) == 0) {
+            List<Ast.Expression> values = new ArrayList<>();
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                values.add(literal(Type.INTEGER));
+            }
+            Variable list = new Variable(name("l"), Type.INTEGER, true, values.size(), 1);
+            lists.add(list);
+            return new Ast.Global(list.name, list.type.name, true, Optional.of(new Ast.Expression.PlcList(values)));
+        }
+        Type type = type();
+        boolean mutable = random.nextBoolean();
+        Ast.Expression value = value(type, WEIGHT);
+        Variable variable = declare(name("g"), type, mutable, sized(type) ? weight : 1);
+        return new Ast.Global(variable.name, type.name, mutable, Optional.of(value));
+    }
+
+    private Ast.Function function() {
+        String name = name("f");
+        Type returnType = type();
+        int[] marks = enter();
+        List<String> parameters = new ArrayList<>();
+        List<String> parameterTypeNames = new ArrayList<>();
+        List<Type> parameterTypes = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            Type type = type();
+            parameters.add(declare(name("p"), type, false, sized(type) ? ARGUMENT : 1).name);
+            parameterTypeNames.add(type.name);
+            parameterTypes.add(type);
+        }
+        Set<String> outer = called;
+        called = new HashSet<>();
+        cost = 1;
+        List<Ast.Statement> body = new ArrayList<>();
+        for (int i = 0; i < statements; i++) {
+            statement(body, nesting);
+        }
+        body.add(new Ast.Statement.Return(value(returnType, WEIGHT)));
+        exit(marks);
+        Set<String> footprint = called;
+        footprint.add(name);
+        called = outer;
+        signatures.add(new Signature(name, parameterTypes, returnType, footprint, cost, sized(returnType) ? weight : 1));
+        return new Ast.Function(name, parameters, parameterTypeNames, Optional.of(returnType.name), body);
+    }
+
+    /**
+     * Generates a main function which calls every other function on literal
+     * arguments and prints the result, each call in a block of its own so
+     * that running a program leaves no variables of its functions behind.
+     */
+    private Ast.Function main() {
+        List<Ast.Statement> body = new ArrayList<>();
+        for (Signature signature : signatures) {
+            List<Ast.Expression> arguments = new ArrayList<>();
+            for (Type parameter : signature.parameters) {
+                arguments.add(literal(parameter));
+            }
+            body.add(new Ast.Statement.If(new Ast.Expression.Literal(true), new ArrayList<>(Collections.singletonList(
+                    new Ast.Statement.Expression(new Ast.Expression.Function("print", new ArrayList<>(Collections.singletonList(
+                            new Ast.Expression.Function(signature.name, arguments))))))), new ArrayList<>()));
+        }
+        calls = false;
+        body.add(new Ast.Statement.Return(value(Type.INTEGER, WEIGHT)));
+        calls = true;
+        return new Ast.Function("main", new ArrayList<>(), new ArrayList<>(), Optional.of(Type.INTEGER.name), body);
+    }
+
+    private List<Ast.Statement> block(int nesting) {
+        int[] marks = enter();
+        Set<String> outer = called;
+        called = new HashSet<>();
+        List<Ast.Statement> block = new ArrayList<>();
+        for (int i = 0; i < statements; i++) {
+            statement(block, nesting);
+        }
+        called = outer;
+        exit(marks);
+        return block;
+    }
+
+    private void statement(List<Ast.Statement> block, int nesting) {
+        int kind = random.nextInt(nesting > 0 ? 10 : 7);
+        if (kind < 3) {
+            Type type = type();
+            Ast.Expression value = value(type, WEIGHT);
+            Variable variable = declare(name("x"), type, true, sized(type) ? weight : 1);
+            block.add(new Ast.Statement.Declaration(variable.name, Optional.of(type.name), Optional.of(value)));
+        } else if (kind < 5) {
+            List<Variable> candidates = assignable.get(type().ordinal());
+            if (candidates.isEmpty()) {
+                block.add(print());
+                return;
+            }
+            Variable variable = pick(candidates);
+            Ast.Expression value = value(variable.type, sized(variable.type) ? variable.weight : WEIGHT);
+            block.add(new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), variable.name), value));
+        } else if (kind < 7) {
+            block.add(print());
+        } else if (kind == 7) {
+            calls = false;
+            Ast.Expression condition = value(Type.BOOLEAN, WEIGHT);
+            calls = true;
+            List<Ast.Statement> thenStatements = block(nesting - 1);
+            List<Ast.Statement> elseStatements = random.nextBoolean() ? block(nesting - 1) : new ArrayList<>();
+            block.add(new Ast.Statement.If(condition, thenStatements, elseStatements));
+        } else if (kind == 8) {
+            String counter = name("i");
+            block.add(new Ast.Statement.Declaration(counter, Optional.of(Type.INTEGER.name),
+                    Optional.of(new Ast.Expression.Literal(BigInteger.ZERO))));
+            int bound = 1 + random.nextInt(5);
+            Ast.Expression condition = new Ast.Expression.Binary("<",
+                    new Ast.Expression.Access(Optional.empty(), counter),
+                    new Ast.Expression.Literal(BigInteger.valueOf(bound)));
+            iterations *= bound;
+            List<Ast.Statement> statements = block(nesting - 1);
+            iterations /= bound;
+            statements.add(new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), counter),
+                    new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), counter),
+                            new Ast.Expression.Literal(BigInteger.ONE))));
+            block.add(new Ast.Statement.While(condition, statements));
+        } else {
+            Ast.Expression condition = value(Type.CHARACTER, WEIGHT);
+            List<Ast.Statement.Case> cases = new ArrayList<>();
+            List<Character> values = new ArrayList<>(Arrays.asList('a', 'b', 'c', 'd', 'e'));
+            Collections.shuffle(values, random);
+            for (int i = random.nextInt(3); i >= 0; i--) {
+                cases.add(new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal(values.get(i))), block(nesting - 1)));
+            }
+            cases.add(new Ast.Statement.Case(Optional.empty(), block(nesting - 1)));
+            block.add(new Ast.Statement.Switch(condition, cases));
+        }
+    }
+
+    private Ast.Statement print() {
+        return new Ast.Statement.Expression(new Ast.Expression.Function("print",
+                new ArrayList<>(Collections.singletonList(value(type(), WEIGHT)))));
+    }
+
+    /**
+     * Generates an expression of the given type whose value is at most the
+     * given weight, leaving its weight in {@link #weight}.
+     */
+    private Ast.Expression value(Type type, int limit) {
+        int outer = this.limit;
+        this.limit = limit;
+        weight = 0;
+        Ast.Expression value = expression(type, depth);
+        this.limit = outer;
+        return value;
+    }
+
+    /**
+     * Returns whether the size of a value of the given type depends on its
+     * weight, where booleans and characters always weigh one.
+     */
+    private static boolean sized(Type type) {
+        return type == Type.INTEGER || type == Type.DECIMAL || type == Type.STRING;
+    }
+
+    private Ast.Expression expression(Type type, int depth) {
+        if (depth > 0 && limit - weight > 1 && random.nextInt(3) != 0) {
+            Ast.Expression binary = binary(type, depth);
+            if (binary != null) {
+                return binary;
+            }
+        }
+        return primary(type, depth);
+    }
+
+    /**
+     * Returns a binary expression of the given type using one of the enabled
+     * operators, or null if none of them produce that type.
+     */
+    private Ast.Expression binary(Type type, int depth) {
+        List<String> candidates = new ArrayList<>();
+        for (String operator : operators) {
+            if (produces(operator, type)) {
+                candidates.add(operator);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        String operator = pick(candidates);
+        Type operand = type;
+        if (precedence(operator) == 1) {
+            operand = random.nextBoolean() ? Type.INTEGER : Type.DECIMAL;
+        }
+        int start = weight;
+        boolean literal = operator.equals("/") || operator.equals("^");
+        limit -= literal ? 0 : 1;
+        Ast.Expression left = expression(operand, depth - 1);
+        limit += literal ? 0 : 1;
+        Ast.Expression right;
+        if (operator.equals("/")) {
+            right = operand == Type.INTEGER
+                    ? new Ast.Expression.Literal(BigInteger.valueOf(1 + random.nextInt(9)))
+                    : new Ast.Expression.Literal(new BigDecimal((1 + random.nextInt(9)) + ".5"));
+        } else if (operator.equals("^")) {
+            int exponent = random.nextInt(4);
+            if (start + (weight - start) * exponent > limit) {
+                exponent = 1;
+            }
+            weight = start + (weight - start) * Math.max(exponent, 1);
+            right = new Ast.Expression.Literal(BigInteger.valueOf(exponent));
+        } else {
+            right = expression(operand, depth - 1);
+        }
+        if (left instanceof Ast.Expression.Binary
+                && precedence(((Ast.Expression.Binary) left).getOperator()) < precedence(operator)) {
+            left = new Ast.Expression.Group(left);
+        }
+        if (right instanceof Ast.Expression.Binary
+                && precedence(((Ast.Expression.Binary) right).getOperator()) <= precedence(operator)) {
+            right = new Ast.Expression.Group(right);
+        }
+        return new Ast.Expression.Binary(operator, left, right);
+    }
+
+    private Ast.Expression primary(Type type, int depth) {
+        int kind = random.nextInt(10);
+        List<Variable> candidates = new ArrayList<>();
+        for (Variable variable : variables.get(type.ordinal())) {
+            if (weight + variable.weight <= limit) {
+                candidates.add(variable);
+            }
+        }
+        if (kind < 4 && !candidates.isEmpty()) {
+            Variable variable = pick(candidates);
+            weight += variable.weight;
+            return new Ast.Expression.Access(Optional.empty(), variable.name);
+        } else if (kind == 4 && type == Type.INTEGER && !lists.isEmpty()) {
+            Variable list = pick(lists);
+            weight++;
+            return new Ast.Expression.Access(Optional.of(
+                    new Ast.Expression.Literal(BigInteger.valueOf(random.nextInt(list.size)))), list.name);
+        } else if (kind == 5 && depth > 0 && calls) {
+            List<Signature> callable = new ArrayList<>();
+            for (Signature signature : signatures) {
+                if (signature.returnType == type && Collections.disjoint(signature.footprint, called)
+                        && cost + iterations * signature.calls <= CALLS && weight + signature.weight <= limit) {
+                    callable.add(signature);
+                }
+            }
+            if (!callable.isEmpty()) {
+                Signature signature = pick(callable);
+                called.addAll(signature.footprint);
+                cost += iterations * signature.calls;
+                int start = weight;
+                int outer = limit;
+                List<Ast.Expression> arguments = new ArrayList<>();
+                for (Type parameter : signature.parameters) {
+                    weight = 0;
+                    limit = ARGUMENT;
+                    arguments.add(expression(parameter, depth - 1));
+                }
+                weight = start + signature.weight;
+                limit = outer;
+                return new Ast.Expression.Function(signature.name, arguments);
+            }
+        } else if (kind == 6 && depth > 0) {
+            return new Ast.Expression.Group(expression(type, depth - 1));
+        }
+        return literal(type);
+    }
+
+    private Ast.Expression.Literal literal(Type type) {
+        weight++;
+        switch (type) {
+            case INTEGER: return new Ast.Expression.Literal(BigInteger.valueOf(random.nextInt(100)));
+            case DECIMAL: return new Ast.Expression.Literal(new BigDecimal(random.nextInt(100) + "." + random.nextInt(10)));
+            case BOOLEAN: return new Ast.Expression.Literal(random.nextBoolean());
+            case CHARACTER: return new Ast.Expression.Literal((char) ('a' + random.nextInt(5)));
+            default: return new Ast.Expression.Literal(random.nextInt(4) == 0 ? "line " + names + "\n" : "string " + names);
+        }
+    }
+
+    private static boolean produces(String operator, Type type) {
+        switch (operator) {
+            case "&&": case "||": case "<": case ">": case "==": case "!=": return type == Type.BOOLEAN;
+            case "+": return type == Type.INTEGER || type == Type.DECIMAL || type == Type.STRING;
+            case "-": case "*": case "/": return type == Type.INTEGER || type == Type.DECIMAL;
+            case "^": return type == Type.INTEGER;
+            default: return false;
+        }
+    }
+
+    private static int precedence(String operator) {
+        switch (operator) {
+            case "&&": case "||": return 0;
+            case "<": case ">": case "==": case "!=": return 1;
+            case "+": case "-": return 2;
+            default: return 3;
+        }
+    }
+
+    private Type type() {
+        return Type.values()[random.nextInt(Type.values().length)];
+    }
+
+    private String name(String prefix) {
+        return prefix + names++;
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private Variable declare(String name, Type type, boolean mutable, int weight) {
+        Variable variable = new Variable(name, type, mutable, 0, weight);
+        variables.get(type.ordinal()).add(variable);
+        if (mutable) {
+            assignable.get(type.ordinal()).add(variable);
+        }
+        return variable;
+    }
+
+    /**
+     * Opens a scope, returning the number of visible variables of each type so
+     * that {@link #exit(int[])} can drop the ones declared inside it.
+     */
+    private int[] enter() {
+        int[] marks = new int[variables.size() * 2];
+        for (int i = 0; i < variables.size(); i++) {
+            marks[2 * i] = variables.get(i).size();
+            marks[2 * i + 1] = assignable.get(i).size();
+        }
+        return marks;
+    }
+
+    private void exit(int[] marks) {
+        for (int i = 0; i < variables.size(); i++) {
+            truncate(variables.get(i), marks[2 * i]);
+            truncate(assignable.get(i), marks[2 * i + 1]);
+        }
+    }
+
+    private static void truncate(List<Variable> list, int size) {
+        list.subList(size, list.size()).clear();
+    }
+
+}
@@ -0,0 +1,276 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the variables of a function ahead of time, so the
+ * {@link Interpreter} can find them by position instead of searching the
+ * scope chain by name. Parameters and top level declarations are given a slot
+ * in the frame of each call, and declarations in a block a slot in the scope
+ * of that block.
+ *
+ * Since functions run in the scope of their caller, an access is only
+ * resolved when it is certain which declaration it refers to: one that has
+ * already run in an enclosing statement list, with no block in between that
+ * could declare the same name. Everything else is left to be looked up by
+ * name.
+ */
+public final class Resolver implements Ast.Visitor<Void> {
+
+    /**
+     * The position of a variable, found by walking out {@code depth} scopes
+     * from the current one and taking the given slot of that scope, or of the
+     * frame when the variable belongs to the function itself.
+     */
+    public static final class Coordinate {
+
+        private final Ast.Function function;
+        private final int depth;
+        private final int slot;
+        private final boolean frame;
+
+        public Coordinate(Ast.Function function, int depth, int slot, boolean frame) {
+            this.function = function;
+            this.depth = depth;
+            this.slot = slot;
+            this.frame = frame;
+        }
+
+        /**
+         * Returns the function that was resolved, since the coordinate only
+         * applies while that function is running.
+         */
+        public Ast.Function getFunction() {
+            return function;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        public boolean isFrame() {
+            return frame;
+        }
+
+    }
+
+    private static final class Level {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Set<String> defined = new HashSet<>();
+        private final boolean frame;
+
+        private Level(boolean frame) {
+            this.frame = frame;
+        }
+
+        private void declare(List<Ast.Statement> statements) {
+            for (Ast.Statement statement : statements) {
+                if (statement instanceof Ast.Statement.Declaration) {
+                    slots.putIfAbsent(((Ast.Statement.Declaration) statement).getName(), slots.size());
+                }
+            }
+        }
+
+    }
+
+    private final List<Level> levels = new ArrayList<>();
+    private Ast.Function function;
+    private int frameSize = 0;
+
+    private Resolver() {}
+
+    /**
+     * Resolves the variables of the given function, returning the number of
+     * slots its frame needs. Only functions can be resolved, since sources
+     * and globals run outside of any frame.
+     */
+    public static int resolve(Ast ast) {
+        if (!(ast instanceof Ast.Function)) {
+            throw new IllegalArgumentException("Only functions can be resolved, received " + ast.getClass().getName() + ".");
+        }
+        Resolver resolver = new Resolver();
+        resolver.visit(ast);
+        return resolver.frameSize;
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        throw new IllegalArgumentException("Only functions can be resolved, received a source.");
+    }
+
+    @Override
+    public Void visit(Ast.Global ast) {
+        throw new IllegalArgumentException("Only functions can be resolved, received a global.");
+    }
+
+    @Override
+    public Void visit(Ast.Function ast) {
+        function = ast;
+        Level level = new Level(true);
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            level.slots.put(ast.getParameters().get(i), i);
+            level.defined.add(ast.getParameters().get(i));
+        }
+        frameSize = ast.getParameters().size();
+        for (Ast.Statement statement : ast.getStatements()) {
+            if (statement instanceof Ast.Statement.Declaration
+                    && !level.slots.containsKey(((Ast.Statement.Declaration) statement).getName())) {
+                level.slots.put(((Ast.Statement.Declaration) statement).getName(), frameSize++);
+            }
+        }
+        levels.add(level);
+        for (Ast.Statement statement : ast.getStatements()) {
+            visit(statement);
+        }
+        levels.remove(levels.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Declaration ast) {
+        ast.getValue().ifPresent(this::visit);
+        Level level = levels.get(levels.size() - 1);
+        ast.setCoordinate(new Coordinate(function, 0, level.slots.get(ast.getName()), level.frame));
+        level.defined.add(ast.getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        block(ast.getThenStatements());
+        block(ast.getElseStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        Level level = new Level(false);
+        for (Ast.Statement.Case statement : ast.getCases()) {
+            level.declare(statement.getStatements());
+        }
+        levels.add(level);
+        for (Ast.Statement.Case statement : ast.getCases()) {
+            level.defined.clear();
+            visit(statement);
+        }
+        levels.remove(levels.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Case ast) {
+        ast.getValue().ifPresent(this::visit);
+        for (Ast.Statement statement : ast.getStatements()) {
+            visit(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.While ast) {
+        visit(ast.getCondition());
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    /**
+     * A syntax error declares and accesses nothing, so there is nothing to
+     * resolve; the interpreter reports it if it is ever executed.
+     */
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Binary ast) {
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Access ast) {
+        Coordinate coordinate = null;
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            Level level = levels.get(i);
+            if (level.defined.contains(ast.getName())) {
+                coordinate = new Coordinate(function, levels.size() - 1 - i, level.slots.get(ast.getName()), level.frame);
+                break;
+            } else if (level.slots.containsKey(ast.getName())) {
+                break;
+            }
+        }
+        ast.setCoordinate(coordinate);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Function ast) {
+        for (Ast.Expression argument : ast.getArguments()) {
+            visit(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.PlcList ast) {
+        for (Ast.Expression value : ast.getValues()) {
+            visit(value);
+        }
+        return null;
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        Level level = new Level(false);
+        level.declare(statements);
+        levels.add(level);
+        for (Ast.Statement statement : statements) {
+            visit(statement);
+        }
+        levels.remove(levels.size() - 1);
+    }
+
+}
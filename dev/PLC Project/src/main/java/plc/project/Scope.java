@@ -1,6 +1,7 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +12,8 @@ public final class Scope {
     private final Scope parent;
     private final Map<String, Environment.Variable> variables = new HashMap<>();
     private final Map<String, Environment.Function> functions = new HashMap<>();
+    private Environment.Variable[] slots = new Environment.Variable[0];
+    private boolean dynamic = false;
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -25,6 +28,47 @@ public final class Scope {
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
+        dynamic = true;
+        return define(name, jvmName, type, mutable, value);
+    }
+
+    /**
+     * Defines a variable the {@link Resolver} assigned to a slot of this
+     * scope, so the {@link Interpreter} can find it without a lookup by name.
+     */
+    Environment.Variable declare(int slot, String name, Environment.PlcObject value) {
+        Environment.Variable variable = define(name, name, Environment.Type.ANY, true, value);
+        if (slot >= slots.length) {
+            slots = Arrays.copyOf(slots, slot + 1);
+        }
+        slots[slot] = variable;
+        return variable;
+    }
+
+    Environment.Variable getSlot(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Returns true if a variable was defined in this scope by name, which may
+     * hide a variable the {@link Resolver} expected to be found further out.
+     */
+    boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * Removes everything defined in this scope, so a loop can reuse it for
+     * each iteration.
+     */
+    void clear() {
+        variables.clear();
+        functions.clear();
+        Arrays.fill(slots, null);
+        dynamic = false;
+    }
+
+    private Environment.Variable define(String name, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
         if (variables.containsKey(name)) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
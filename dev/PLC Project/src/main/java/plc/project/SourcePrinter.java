@@ -0,0 +1,268 @@
+package plc.project;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Prints an AST back out as PLC source, the reverse of the {@link Parser}.
+ * Binary expressions are printed without parentheses, so any grouping which
+ * differs from the operator precedence must be an explicit {@link
+ * Ast.Expression.Group} in the tree.
+ */
+public final class SourcePrinter implements Ast.Visitor<Void> {
+
+    private final PrintWriter writer;
+    private int indent = 0;
+
+    public SourcePrinter(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    private void print(Object... objects) {
+        for (Object object : objects) {
+            if (object instanceof Ast) {
+                visit((Ast) object);
+            } else {
+                writer.write(object.toString());
+            }
+        }
+    }
+
+    private void newline(int indent) {
+        writer.println();
+        for (int i = 0; i < indent; i++) {
+            writer.write("    ");
+        }
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        indent++;
+        for (Ast.Statement statement : statements) {
+            newline(indent);
+            visit(statement);
+        }
+        indent--;
+        newline(indent);
+    }
+
+    private void list(List<? extends Ast> values) {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                print(", ");
+            }
+            visit(values.get(i));
+        }
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            visit(global);
+            writer.println();
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            visit(function);
+            writer.println();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Global ast) {
+        if (ast.getValue().isPresent() && ast.getValue().get() instanceof Ast.Expression.PlcList) {
+            print("LIST ");
+        } else {
+            print(ast.getMutable() ? "VAR " : "VAL ");
+        }
+        print(ast.getName(), ": ", ast.getTypeName());
+        if (ast.getValue().isPresent()) {
+            print(" = ", ast.getValue().get());
+        }
+        print(";");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Function ast) {
+        print("FUN ", ast.getName(), "(");
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            if (i > 0) {
+                print(", ");
+            }
+            print(ast.getParameters().get(i), ": ", ast.getParameterTypeNames().get(i));
+        }
+        print(")");
+        if (ast.getReturnTypeName().isPresent()) {
+            print(": ", ast.getReturnTypeName().get());
+        }
+        print(" DO");
+        block(ast.getStatements());
+        print("END");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Expression ast) {
+        print(ast.getExpression(), ";");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Declaration ast) {
+        print("LET ", ast.getName());
+        if (ast.getTypeName().isPresent()) {
+            print(": ", ast.getTypeName().get());
+        }
+        if (ast.getValue().isPresent()) {
+            print(" = ", ast.getValue().get());
+        }
+        print(";");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Assignment ast) {
+        print(ast.getReceiver(), " = ", ast.getValue(), ";");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.If ast) {
+        print("IF ", ast.getCondition(), " DO");
+        block(ast.getThenStatements());
+        if (!ast.getElseStatements().isEmpty()) {
+            print("ELSE");
+            block(ast.getElseStatements());
+        }
+        print("END");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Switch ast) {
+        print("SWITCH ", ast.getCondition());
+        indent++;
+        for (Ast.Statement.Case statement : ast.getCases()) {
+            newline(indent);
+            visit(statement);
+        }
+        indent--;
+        newline(indent);
+        print("END");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Case ast) {
+        if (ast.getValue().isPresent()) {
+            print("CASE ", ast.getValue().get(), ":");
+        } else {
+            print("DEFAULT");
+        }
+        indent++;
+        for (Ast.Statement statement : ast.getStatements()) {
+            newline(indent);
+            visit(statement);
+        }
+        indent--;
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.While ast) {
+        print("WHILE ", ast.getCondition(), " DO");
+        block(ast.getStatements());
+        print("END");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Return ast) {
+        print("RETURN ", ast.getValue(), ";");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        throw new RuntimeException("Cannot print a syntax error: " + ast.getMessage() + ".");
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Literal ast) {
+        Object literal = ast.getLiteral();
+        if (literal == null) {
+            print("NIL");
+        } else if (literal instanceof Boolean) {
+            print((Boolean) literal ? "TRUE" : "FALSE");
+        } else if (literal instanceof Character) {
+            print("'", escape((Character) literal), "'");
+        } else if (literal instanceof String) {
+            StringBuilder builder = new StringBuilder("\"");
+            for (char c : ((String) literal).toCharArray()) {
+                builder.append(escape(c));
+            }
+            print(builder.append('"'));
+        } else if (literal instanceof BigDecimal) {
+            print(((BigDecimal) literal).toPlainString());
+        } else {
+            print(literal);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Group ast) {
+        print("(", ast.getExpression(), ")");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Binary ast) {
+        print(ast.getLeft(), " ", ast.getOperator(), " ", ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Access ast) {
+        print(ast.getName());
+        if (ast.getOffset().isPresent()) {
+            print("[", ast.getOffset().get(), "]");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Function ast) {
+        print(ast.getName(), "(");
+        list(ast.getArguments());
+        print(")");
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.PlcList ast) {
+        print("[");
+        list(ast.getValues());
+        print("]");
+        return null;
+    }
+
+    /**
+     * Escapes a character for a string or character literal. The lexer only
+     * accepts the escapes {@code \b \n \r \t \"}, so a backslash cannot be
+     * written at all.
+     */
+    private static String escape(char c) {
+        switch (c) {
+            case '\b': return "\\b";
+            case '\n': return "\\n";
+            case '\r': return "\\r";
+            case '\t': return "\\t";
+            case '"': return "\\\"";
+            case '\\': throw new IllegalArgumentException("A backslash cannot be written in a literal.");
+            default: return String.valueOf(c);
+        }
+    }
+
+}
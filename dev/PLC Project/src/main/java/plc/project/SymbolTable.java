@@ -0,0 +1,144 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns identifier names into small integer ids, so that every occurrence
+ * of an identifier shares one {@link String} and can be compared as an int.
+ *
+ * Every table starts with the keywords of the language registered in the
+ * order of {@link #KEYWORDS}, so a keyword has the same id in all tables and
+ * can be checked with {@link #keyword(String)} without access to the table
+ * that produced a token.
+ */
+public final class SymbolTable {
+
+    /**
+     * The id of tokens which are not identifiers.
+     */
+    public static final int NONE = -1;
+
+    private static final String[] KEYWORDS = {
+            "LET", "VAR", "VAL", "FUN", "DO", "END", "IF", "ELSE", "WHILE",
+            "SWITCH", "CASE", "DEFAULT", "RETURN", "TRUE", "FALSE", "NIL", "LIST"
+    };
+
+    private static final Map<String, Integer> KEYWORD_IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            KEYWORD_IDS.put(KEYWORDS[i], i);
+        }
+    }
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] slots = new int[128];
+    private int size = 0;
+
+    public SymbolTable() {
+        Arrays.fill(slots, NONE);
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    /**
+     * Returns the id of the given keyword, or {@link #NONE} if it is not one.
+     */
+    public static int keyword(String name) {
+        Integer id = KEYWORD_IDS.get(name);
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * Returns the number of keywords, which have the ids from 0 up to but
+     * excluding this.
+     */
+    public static int keywordCount() {
+        return KEYWORDS.length;
+    }
+
+    public static boolean isKeyword(int id) {
+        return id >= 0 && id < KEYWORDS.length;
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of the {@code length} characters of the source starting
+     * at {@code start}, registering them as a new symbol if needed. A name
+     * is only copied out of the source the first time it is seen.
+     */
+    public int intern(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.charAt(start + i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == NONE) {
+                return add(source.subSequence(start, start + length).toString(), hash, slot);
+            } else if (hashes[id] == hash && matches(names[id], source, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Symbol: " + id + ", Size: " + size);
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -12,13 +12,45 @@ public final class Token {
     }
 
     private final Type type;
-    private final String literal;
     private final int index;
+    private final int length;
+    private final CharSequence source;
+    private final int symbol;
+    private String literal;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.source = null;
         this.literal = literal;
         this.index = index;
+        this.length = literal.length();
+        this.symbol = SymbolTable.NONE;
+    }
+
+    /**
+     * Creates a token which refers to {@code length} characters of the source
+     * starting at {@code index} rather than copying them. The literal is only
+     * materialized the first time {@link #getLiteral()} is called.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this.type = type;
+        this.source = source;
+        this.index = index;
+        this.length = length;
+        this.symbol = SymbolTable.NONE;
+    }
+
+    /**
+     * Creates an identifier token for an interned symbol, sharing the name
+     * held by the symbol table as its literal.
+     */
+    public Token(SymbolTable symbols, int symbol, int index) {
+        this.type = Type.IDENTIFIER;
+        this.source = null;
+        this.literal = symbols.getName(symbol);
+        this.index = index;
+        this.length = literal.length();
+        this.symbol = symbol;
     }
 
     public Type getType() {
@@ -26,24 +58,47 @@ public final class Token {
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
+    /**
+     * Returns the character of the literal at the given offset, reading it
+     * from the source if the literal has not been materialized.
+     */
+    public char charAt(int offset) {
+        return literal != null ? literal.charAt(offset) : source.charAt(index + offset);
+    }
+
     public int getIndex() {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the symbol id of an identifier produced by the lexer, or
+     * {@link SymbolTable#NONE} for other tokens.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,218 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A compact token list which stores each token as a type, start index, and
+ * length in parallel primitive arrays, all referring into one shared source.
+ * This avoids a {@link Token} and {@link String} object per token, which is
+ * most of the memory of a large token list.
+ *
+ * The buffer is still a {@code List<Token>} so it can be passed anywhere a
+ * token list is expected, with {@link #get(int)} creating a token on demand.
+ * Code which walks the buffer directly should use a {@link Cursor} instead.
+ */
+public final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private final SymbolTable symbolTable;
+    private byte[] types = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int[] symbols = new int[16];
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, null);
+    }
+
+    /**
+     * Creates a buffer whose identifiers may carry symbols interned in the
+     * given table, in which case their literals are the interned names.
+     */
+    public TokenBuffer(CharSequence source, SymbolTable symbolTable) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Appends a token of the given type covering {@code length} characters of
+     * the source starting at {@code start}.
+     */
+    public void add(Token.Type type, int start, int length) {
+        add(type, start, length, SymbolTable.NONE);
+    }
+
+    /**
+     * Appends a token as with {@link #add(Token.Type, int, int)} which also
+     * carries the given symbol id from this buffer's symbol table.
+     */
+    public void add(Token.Type type, int start, int length, int symbol) {
+        if (symbol != SymbolTable.NONE && symbolTable == null) {
+            throw new IllegalArgumentException("This buffer has no symbol table.");
+        }
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Token get(int index) {
+        checkIndex(index);
+        if (symbols[index] != SymbolTable.NONE) {
+            return new Token(symbolTable, symbols[index], starts[index]);
+        }
+        return new Token(TYPES[types[index]], source, starts[index], lengths[index]);
+    }
+
+    public Token.Type getType(int index) {
+        checkIndex(index);
+        return TYPES[types[index]];
+    }
+
+    public int getIndex(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    public int getSymbol(int index) {
+        checkIndex(index);
+        return symbols[index];
+    }
+
+    public String getLiteral(int index) {
+        checkIndex(index);
+        if (symbols[index] != SymbolTable.NONE) {
+            return symbolTable.getName(symbols[index]);
+        }
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    /**
+     * Returns the character of the literal of the token at the given index at
+     * {@code offset}, without copying the literal.
+     */
+    public char charAt(int index, int offset) {
+        checkIndex(index);
+        if (symbols[index] != SymbolTable.NONE) {
+            return symbolTable.getName(symbols[index]).charAt(offset);
+        }
+        return source.charAt(starts[index] + offset);
+    }
+
+    /**
+     * Returns true if the literal of the token at the given index is equal to
+     * {@code literal}, comparing against the source without copying it.
+     */
+    public boolean hasLiteral(int index, String literal) {
+        checkIndex(index);
+        if (lengths[index] != literal.length()) {
+            return false;
+        }
+        int start = starts[index];
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A flyweight view of the buffer positioned at one token at a time. Like
+     * {@link Parser}'s token stream, offsets are relative to the current
+     * position and {@link #advance()} moves to the next token.
+     */
+    public final class Cursor {
+
+        private int index = 0;
+
+        private Cursor() {}
+
+        public boolean has(int offset) {
+            return index + offset < size;
+        }
+
+        public Token.Type getType(int offset) {
+            return TokenBuffer.this.getType(index + offset);
+        }
+
+        public int getSymbol(int offset) {
+            return TokenBuffer.this.getSymbol(index + offset);
+        }
+
+        public String getLiteral(int offset) {
+            return TokenBuffer.this.getLiteral(index + offset);
+        }
+
+        public int getIndex(int offset) {
+            return TokenBuffer.this.getIndex(index + offset);
+        }
+
+        public int getLength(int offset) {
+            return TokenBuffer.this.getLength(index + offset);
+        }
+
+        public char charAt(int offset, int index) {
+            return TokenBuffer.this.charAt(this.index + offset, index);
+        }
+
+        public boolean hasLiteral(int offset, String literal) {
+            return TokenBuffer.this.hasLiteral(index + offset, literal);
+        }
+
+        public void advance() {
+            index++;
+        }
+
+        /**
+         * Moves to the token at the given index of the buffer.
+         */
+        public void seek(int index) {
+            this.index = index;
+        }
+
+    }
+
+}
@@ -0,0 +1,1085 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes ASTs with the same results as the {@link ClosureCompiler}, but by
+ * compiling them to a stack bytecode which is run by a single dispatch loop.
+ * The code of each function is an {@code int[]} of opcodes followed by their
+ * operands, which index slots of the frame, positions in the code, or
+ * entries of the function's constant pool holding literals, names, and
+ * cached globals and callees.
+ *
+ * Variables are laid out in frame slots exactly as in the closure compiler,
+ * and are scoped the same way: a name a function has not declared is found
+ * in the variables visible to its callers, innermost first, and a function's
+ * own parameters and variables are local to each call.
+ * The stack and frames hold the values of objects rather than the objects,
+ * which are only created when a value is stored in the scope or passed to a
+ * function not compiled by this machine, so a compiled function calls
+ * another by running its code directly on the arguments on the stack.
+ *
+ * The interpreter evaluates a failing operand of a binary expression to nil,
+ * and a function whose last statement fails returns nil. These are compiled
+ * as ranges of code with a handler, which on an exception thrown inside the
+ * range resets the stack to its depth at the start, pushes nil, and
+ * continues after the range, so the normal path costs nothing.
+ */
+public final class VirtualMachine {
+
+    private static final int PUSH = 0;
+    private static final int POP = 1;
+    private static final int LIST = 2;
+    private static final int LOAD_GLOBAL = 3;
+    private static final int LOAD_SLOT = 4;
+    private static final int LOAD_ANY = 5;
+    private static final int INDEX = 6;
+    private static final int STORE_GLOBAL = 7;
+    private static final int STORE_SLOT = 8;
+    private static final int STORE_ANY = 9;
+    private static final int STORE_INDEX = 10;
+    private static final int DECLARE = 11;
+    private static final int DEFINE = 12;
+    private static final int FUNCTION = 13;
+    private static final int CALL = 14;
+    private static final int MAIN = 15;
+    private static final int JUMP = 16;
+    private static final int JUMP_IF_FALSE = 17;
+    private static final int JUMP_IF_TRUE = 18;
+    private static final int SWITCH = 19;
+    private static final int CASE = 20;
+    private static final int CLEAR = 21;
+    private static final int AND = 22;
+    private static final int OR = 23;
+    private static final int LESS = 24;
+    private static final int GREATER = 25;
+    private static final int EQUAL = 26;
+    private static final int ADD = 27;
+    private static final int SUBTRACT = 28;
+    private static final int MULTIPLY = 29;
+    private static final int DIVIDE = 30;
+    private static final int POWER = 31;
+    private static final int INVALID = 32;
+    private static final int REQUIRE = 33;
+    private static final int FAIL = 34;
+    private static final int ERROR = 35;
+    private static final int RETURN = 36;
+
+    /**
+     * The value of a frame slot whose variable is not declared.
+     */
+    private static final Object EMPTY = new Object();
+
+    private final Scope scope;
+    private final Map<Environment.Function, Prototype> prototypes = new IdentityHashMap<>();
+    private Caller callers = null;
+
+    public VirtualMachine(Scope parent) {
+        scope = Interpreter.builtins(parent);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Compiles and runs the given AST, returning the same value as {@link
+     * Interpreter#visit(Ast)} apart from the scoping of a function's own
+     * variables, as in the closure compiler. Functions are compiled once when
+     * they are defined and their code is run on each call.
+     */
+    public Environment.PlcObject execute(Ast ast) {
+        Compiler compiler = new Compiler();
+        compiler.value(ast);
+        compiler.assembler.emit(RETURN);
+        Chunk chunk = compiler.assembler.toChunk();
+        Object[] frame = new Object[chunk.frameSize];
+        Arrays.fill(frame, EMPTY);
+        return wrap(run(chunk, frame));
+    }
+
+    /**
+     * The compiled code of a function or of the AST passed to {@link
+     * #execute(Ast)}. Handlers are triples of the start and end of a range of
+     * code and the stack depth at its start, with inner ranges first.
+     */
+    private static final class Chunk {
+
+        private final int[] code;
+        private final Object[] constants;
+        private final int[] handlers;
+        private final int maxStack;
+        private final int frameSize;
+
+        private Chunk(int[] code, Object[] constants, int[] handlers, int maxStack, int frameSize) {
+            this.code = code;
+            this.constants = constants;
+            this.handlers = handlers;
+            this.maxStack = maxStack;
+            this.frameSize = frameSize;
+        }
+
+        /**
+         * Returns the index of the innermost handler whose range contains the
+         * instruction that was running at the given program counter, which
+         * is past its opcode, or -1 if there is none.
+         */
+        private int handler(int pc) {
+            for (int i = 0; i < handlers.length; i += 3) {
+                if (handlers[i] < pc && pc <= handlers[i + 1]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A call in progress, with the frame of the function that made it and the
+     * slots of the variables visible where it was made.
+     */
+    private static final class Caller {
+
+        private final Object[] frame;
+        private final Map<String, int[]> visible;
+        private final Caller parent;
+
+        private Caller(Object[] frame, Map<String, int[]> visible, Caller parent) {
+            this.frame = frame;
+            this.visible = visible;
+            this.parent = parent;
+        }
+
+        /**
+         * Returns the first non-empty slot of a variable with this name, or
+         * -1 if there is none.
+         */
+        private int slot(String name) {
+            int[] slots = visible.get(name);
+            if (slots != null) {
+                for (int slot : slots) {
+                    if (frame[slot] != EMPTY) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A variable which is not in a slot of the current frame, found in the
+     * callers or else the scope. The variable in the scope is looked up on
+     * first use.
+     */
+    private final class Global {
+
+        private final String name;
+        private Environment.Variable variable;
+
+        private Global(String name) {
+            this.name = name;
+        }
+
+        private Environment.Variable get() {
+            if (variable == null) {
+                variable = scope.lookupVariable(name);
+            }
+            return variable;
+        }
+
+        private Object load() {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    return caller.frame[slot];
+                }
+            }
+            return get().getValue().getValue();
+        }
+
+        private void store(Object value) {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    caller.frame[slot] = value;
+                    return;
+                }
+            }
+            mutable().setValue(wrap(value));
+        }
+
+        /**
+         * Returns the list to assign an element of, which must be mutable if
+         * it is in the scope.
+         */
+        private Object list() {
+            for (Caller caller = callers; caller != null; caller = caller.parent) {
+                int slot = caller.slot(name);
+                if (slot >= 0) {
+                    return caller.frame[slot];
+                }
+            }
+            return mutable().getValue().getValue();
+        }
+
+        private Environment.Variable mutable() {
+            Environment.Variable variable = get();
+            if (!variable.getMutable()) {
+                throw new RuntimeException("Not Mutable");
+            }
+            return variable;
+        }
+
+    }
+
+    /**
+     * A function in the scope, looked up on first call since a function may be
+     * called by a function defined before it. A function compiled by this
+     * machine is called directly with the values on the stack. While it runs,
+     * the variables visible at the call are added to the callers.
+     */
+    private final class Callee {
+
+        private final String name;
+        private final int arity;
+        private final Map<String, int[]> visible;
+        private Environment.Function function;
+        private Prototype prototype;
+
+        private Callee(String name, int arity, Map<String, int[]> visible) {
+            this.name = name;
+            this.arity = arity;
+            this.visible = visible;
+        }
+
+        private Object call(Object[] stack, int start, Object[] frame) {
+            if (function == null) {
+                function = scope.lookupFunction(name, arity);
+                prototype = prototypes.get(function);
+            }
+            if (visible.isEmpty()) {
+                return call(stack, start);
+            }
+            Caller outer = callers;
+            callers = new Caller(frame, visible, outer);
+            try {
+                return call(stack, start);
+            } finally {
+                callers = outer;
+            }
+        }
+
+        private Object call(Object[] stack, int start) {
+            if (prototype != null) {
+                return prototype.call(stack, start);
+            }
+            List<Environment.PlcObject> arguments = new ArrayList<>(arity);
+            for (int i = start; i < start + arity; i++) {
+                arguments.add(wrap(stack[i]));
+            }
+            return function.invoke(arguments).getValue();
+        }
+
+    }
+
+    /**
+     * A compiled function, which is defined in the scope when its definition
+     * is run.
+     */
+    private final class Prototype {
+
+        private final String name;
+        private final List<String> parameters;
+        private final int[] slots;
+        private final int duplicate;
+        private final Chunk chunk;
+
+        private Prototype(String name, List<String> parameters, int[] slots, int duplicate, Chunk chunk) {
+            this.name = name;
+            this.parameters = parameters;
+            this.slots = slots;
+            this.duplicate = duplicate;
+            this.chunk = chunk;
+        }
+
+        private Object call(Object[] arguments, int start) {
+            Object[] frame = new Object[chunk.frameSize];
+            Arrays.fill(frame, EMPTY);
+            for (int i = 0; i < slots.length; i++) {
+                if (i == duplicate) {
+                    throw new RuntimeException("The variable " + parameters.get(i) + " is already defined in this scope.");
+                }
+                frame[slots[i]] = arguments[start + i];
+            }
+            return run(chunk, frame);
+        }
+
+        private Environment.PlcObject invoke(List<Environment.PlcObject> arguments) {
+            Object[] values = new Object[slots.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments.get(i).getValue();
+            }
+            return wrap(call(values, 0));
+        }
+
+    }
+
+    /**
+     * Wraps a value leaving the machine, reusing nil.
+     */
+    private static Environment.PlcObject wrap(Object value) {
+        return value == Environment.NIL.getValue() ? Environment.NIL : Environment.create(value);
+    }
+
+    /**
+     * Runs a chunk against a frame until it returns.
+     */
+    @SuppressWarnings("unchecked")
+    private Object run(Chunk chunk, Object[] frame) {
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        Object[] stack = new Object[chunk.maxStack];
+        int sp = 0;
+        int pc = 0;
+        while (true) {
+            try {
+                while (true) {
+                    switch (code[pc++]) {
+                        case PUSH:
+                            stack[sp++] = constants[code[pc++]];
+                            break;
+                        case POP:
+                            sp--;
+                            break;
+                        case LIST:
+                            stack[sp++] = new ArrayList<>(Arrays.asList((Object[]) constants[code[pc++]]));
+                            break;
+                        case LOAD_GLOBAL:
+                            stack[sp++] = ((Global) constants[code[pc++]]).load();
+                            break;
+                        case LOAD_SLOT: {
+                            Object value = frame[code[pc++]];
+                            int global = code[pc++];
+                            stack[sp++] = value != EMPTY ? value : ((Global) constants[global]).load();
+                            break;
+                        }
+                        case LOAD_ANY: {
+                            int global = code[pc++];
+                            Object value = local(frame, code, pc);
+                            pc += code[pc] + 1;
+                            stack[sp++] = value != EMPTY ? value : ((Global) constants[global]).load();
+                            break;
+                        }
+                        case INDEX: {
+                            int index = code[pc++];
+                            try {
+                                stack[sp - 1] = ((List<?>) stack[sp - 1]).get(index);
+                            } catch (RuntimeException e) {
+                                // an invalid index evaluates to the whole list, as in the interpreter
+                            }
+                            break;
+                        }
+                        case STORE_GLOBAL:
+                            ((Global) constants[code[pc++]]).store(stack[--sp]);
+                            break;
+                        case STORE_SLOT: {
+                            int slot = code[pc++];
+                            int global = code[pc++];
+                            if (frame[slot] != EMPTY) {
+                                frame[slot] = stack[--sp];
+                            } else {
+                                ((Global) constants[global]).store(stack[--sp]);
+                            }
+                            break;
+                        }
+                        case STORE_ANY: {
+                            int global = code[pc++];
+                            int count = code[pc];
+                            Object value = stack[--sp];
+                            pc += count + 1;
+                            boolean stored = false;
+                            for (int i = pc - count; i < pc && !stored; i++) {
+                                if (frame[code[i]] != EMPTY) {
+                                    frame[code[i]] = value;
+                                    stored = true;
+                                }
+                            }
+                            if (!stored) {
+                                ((Global) constants[global]).store(value);
+                            }
+                            break;
+                        }
+                        case STORE_INDEX: {
+                            int global = code[pc++];
+                            Object index = constants[code[pc++]];
+                            Object list = local(frame, code, pc);
+                            pc += code[pc] + 1;
+                            Object value = stack[--sp];
+                            if (list == EMPTY) {
+                                list = ((Global) constants[global]).list();
+                            }
+                            ((List<Object>) list).set(index instanceof Integer ? (Integer) index : new BigInteger(index.toString()).intValue(), value);
+                            break;
+                        }
+                        case DECLARE: {
+                            int slot = code[pc++];
+                            int name = code[pc++];
+                            if (frame[slot] != EMPTY) {
+                                throw new RuntimeException("The variable " + constants[name] + " is already defined in this scope.");
+                            }
+                            frame[slot] = stack[--sp];
+                            break;
+                        }
+                        case DEFINE: {
+                            String name = (String) constants[code[pc++]];
+                            boolean mutable = code[pc++] != 0;
+                            scope.defineVariable(name, mutable, wrap(stack[--sp]));
+                            break;
+                        }
+                        case FUNCTION: {
+                            Prototype prototype = (Prototype) constants[code[pc++]];
+                            scope.defineFunction(prototype.name, prototype.slots.length, prototype::invoke);
+                            prototypes.put(scope.lookupFunction(prototype.name, prototype.slots.length), prototype);
+                            break;
+                        }
+                        case CALL: {
+                            Callee callee = (Callee) constants[code[pc++]];
+                            sp -= code[pc++];
+                            stack[sp] = callee.call(stack, sp, frame);
+                            sp++;
+                            break;
+                        }
+                        case MAIN: {
+                            List<Environment.PlcObject> arguments = new ArrayList<>();
+                            Environment.PlcObject result;
+                            try {
+                                result = scope.lookupFunction("main", 0).invoke(arguments);
+                            } catch (RuntimeException e) {
+                                result = scope.lookupFunction("main", -1).invoke(arguments);
+                            }
+                            stack[sp++] = result.getValue();
+                            break;
+                        }
+                        case JUMP:
+                            pc = code[pc];
+                            break;
+                        case JUMP_IF_FALSE: {
+                            int target = code[pc++];
+                            if (!Operators.require(Boolean.class, stack[--sp])) {
+                                pc = target;
+                            }
+                            break;
+                        }
+                        case JUMP_IF_TRUE: {
+                            int target = code[pc++];
+                            if (Operators.require(Boolean.class, stack[--sp])) {
+                                pc = target;
+                            }
+                            break;
+                        }
+                        case SWITCH: {
+                            int slot = code[pc++];
+                            frame[slot] = Operators.require(Character.class, stack[--sp]);
+                            break;
+                        }
+                        case CASE: {
+                            int slot = code[pc++];
+                            int target = code[pc++];
+                            char value = (Character) frame[slot];
+                            if (value != Operators.require(Character.class, stack[--sp])) {
+                                pc = target;
+                            }
+                            break;
+                        }
+                        case CLEAR: {
+                            int start = code[pc++];
+                            int end = code[pc++];
+                            Arrays.fill(frame, start, end, EMPTY);
+                            break;
+                        }
+                        case AND:
+                            sp--;
+                            stack[sp - 1] = Operators.and(stack[sp - 1], stack[sp]);
+                            break;
+                        case OR:
+                            sp--;
+                            stack[sp - 1] = Operators.or(stack[sp - 1], stack[sp]);
+                            break;
+                        case LESS:
+                            sp--;
+                            stack[sp - 1] = Operators.compare(stack[sp - 1], stack[sp], 1);
+                            break;
+                        case GREATER:
+                            sp--;
+                            stack[sp - 1] = Operators.compare(stack[sp - 1], stack[sp], -1);
+                            break;
+                        case EQUAL:
+                            sp--;
+                            stack[sp - 1] = Operators.compare(stack[sp - 1], stack[sp], 0);
+                            break;
+                        case ADD:
+                            sp--;
+                            stack[sp - 1] = Operators.add(stack[sp - 1], stack[sp]);
+                            break;
+                        case SUBTRACT:
+                            sp--;
+                            stack[sp - 1] = Operators.subtract(stack[sp - 1], stack[sp]);
+                            break;
+                        case MULTIPLY:
+                            sp--;
+                            stack[sp - 1] = Operators.multiply(stack[sp - 1], stack[sp]);
+                            break;
+                        case DIVIDE:
+                            sp--;
+                            stack[sp - 1] = Operators.divide(stack[sp - 1], stack[sp]);
+                            break;
+                        case POWER:
+                            sp--;
+                            stack[sp - 1] = Operators.power(stack[sp - 1], stack[sp]);
+                            break;
+                        case INVALID:
+                            throw new RuntimeException("Not a valid binary operation");
+                        case REQUIRE: {
+                            Class<?> type = (Class<?>) constants[code[pc++]];
+                            Interpreter.requireType(type, (Environment.PlcObject) constants[code[pc++]]);
+                            break;
+                        }
+                        case FAIL:
+                            throw new RuntimeException((String) constants[code[pc++]]);
+                        case ERROR:
+                            throw new RuntimeException((String) constants[code[pc++]]);
+                        case RETURN:
+                            return stack[sp - 1];
+                        default:
+                            throw new AssertionError("Invalid opcode " + code[pc - 1] + ".");
+                    }
+                }
+            } catch (RuntimeException e) {
+                int handler = chunk.handler(pc);
+                if (handler < 0) {
+                    throw e;
+                }
+                sp = chunk.handlers[handler + 2];
+                stack[sp++] = Environment.NIL.getValue();
+                pc = chunk.handlers[handler + 1];
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the first non-empty slot in a list of candidate
+     * slots, which starts with their count, or {@link #EMPTY} if all are
+     * empty.
+     */
+    private static Object local(Object[] frame, int[] code, int start) {
+        for (int i = start + 1; i <= start + code[start]; i++) {
+            if (frame[code[i]] != EMPTY) {
+                return frame[code[i]];
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Builds the chunk of a function or AST, tracking the depth of the stack
+     * and the blocks and frame slots as the closure compiler does.
+     */
+    private static final class Assembler {
+
+        private int[] code = new int[32];
+        private int length = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final List<Integer> handlers = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+        private final List<Map<String, Integer>> blocks = new ArrayList<>();
+        private int slots = 0;
+        private int frameSize = 0;
+
+        /**
+         * Emits an instruction, which changes the depth of the stack by the
+         * given number of values.
+         */
+        private void emit(int delta, int... words) {
+            if (length + words.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+            }
+            for (int word : words) {
+                code[length++] = word;
+            }
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Emits an instruction without operands, which pops a value unless it
+         * returns.
+         */
+        private void emit(int opcode) {
+            emit(opcode == RETURN ? 0 : -1, opcode);
+        }
+
+        private int constant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        /**
+         * Emits a jump to a position patched later with {@link #patch(int)},
+         * returning the position of its target operand.
+         */
+        private int jump(int opcode, int delta) {
+            emit(delta, opcode, -1);
+            return length - 1;
+        }
+
+        private void patch(int jump) {
+            code[jump] = length;
+        }
+
+        /**
+         * Adds a handler for the code emitted since the given start, which
+         * began with the stack at the given depth.
+         */
+        private void handler(int start, int depth) {
+            handlers.add(start);
+            handlers.add(length);
+            handlers.add(depth);
+        }
+
+        private int declare(String name) {
+            Map<String, Integer> block = blocks.get(blocks.size() - 1);
+            Integer slot = block.get(name);
+            if (slot == null) {
+                slot = allocate();
+                block.put(name, slot);
+            }
+            return slot;
+        }
+
+        private int allocate() {
+            frameSize = Math.max(frameSize, slots + 1);
+            return slots++;
+        }
+
+        /**
+         * Returns the slots of the variables with this name that are visible
+         * here, innermost first.
+         */
+        private int[] resolve(String name) {
+            int[] candidates = new int[blocks.size()];
+            int count = 0;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Integer slot = blocks.get(i).get(name);
+                if (slot != null) {
+                    candidates[count++] = slot;
+                }
+            }
+            return Arrays.copyOf(candidates, count);
+        }
+
+        /**
+         * Returns the slots of every variable visible here, for a function
+         * called here to find the variables of its caller.
+         */
+        private Map<String, int[]> visible() {
+            Map<String, int[]> visible = new HashMap<>();
+            for (Map<String, Integer> block : blocks) {
+                for (String name : block.keySet()) {
+                    visible.computeIfAbsent(name, this::resolve);
+                }
+            }
+            return visible;
+        }
+
+        private Chunk toChunk() {
+            int[] ranges = new int[handlers.size()];
+            for (int i = 0; i < ranges.length; i++) {
+                ranges[i] = handlers.get(i);
+            }
+            return new Chunk(Arrays.copyOf(code, length), constants.toArray(), ranges, Math.max(maxStack, 1), frameSize);
+        }
+
+    }
+
+    /**
+     * Compiles nodes into the current assembler. Expressions push their value
+     * and statements leave the stack as it was. Outside of a function there
+     * are no blocks until one is entered, and declarations define variables
+     * in the scope instead.
+     */
+    private final class Compiler implements Ast.Visitor<Void> {
+
+        private Assembler assembler = new Assembler();
+
+        /**
+         * Compiles a node to push the value the closure compiler would return
+         * for it: the value of an expression, of the expression of a return
+         * statement, or of the main function of a source, and nil otherwise.
+         */
+        private void value(Ast ast) {
+            if (ast instanceof Ast.Statement.Return) {
+                visit(((Ast.Statement.Return) ast).getValue());
+            } else {
+                visit(ast);
+                if (!(ast instanceof Ast.Expression) && !(ast instanceof Ast.Source)) {
+                    push(Environment.NIL.getValue());
+                }
+            }
+        }
+
+        /**
+         * Emits a push of a constant value, where nil is the value of {@link
+         * Environment#NIL}.
+         */
+        private void push(Object value) {
+            assembler.emit(1, PUSH, assembler.constant(value));
+        }
+
+        /**
+         * Compiles statements as a block with a new scope, clearing the slots
+         * it declares when it exits.
+         */
+        private void block(List<? extends Ast> statements) {
+            int start = assembler.slots;
+            assembler.blocks.add(new HashMap<>());
+            for (Ast statement : statements) {
+                visit(statement);
+            }
+            assembler.blocks.remove(assembler.blocks.size() - 1);
+            clear(start);
+        }
+
+        private void clear(int start) {
+            if (assembler.slots > start) {
+                assembler.emit(0, CLEAR, start, assembler.slots);
+            }
+            assembler.slots = start;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            for (Ast.Global global : ast.getGlobals()) {
+                visit(global);
+            }
+            for (Ast.Function function : ast.getFunctions()) {
+                visit(function);
+            }
+            assembler.emit(1, MAIN);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            int name = assembler.constant(ast.getName());
+            if (ast.getValue().isPresent()) {
+                visit(ast.getValue().get());
+            } else if (ast.getMutable()) {
+                push(Environment.NIL.getValue());
+            } else {
+                assembler.emit(0, FAIL, assembler.constant("Immutable empty value"));
+                return null;
+            }
+            assembler.emit(-1, DEFINE, name, ast.getMutable() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            Assembler outer = assembler;
+            assembler = new Assembler();
+            assembler.blocks.add(new HashMap<>());
+            int[] parameters = new int[ast.getParameters().size()];
+            int duplicate = -1;
+            for (int i = 0; i < parameters.length; i++) {
+                int before = assembler.slots;
+                parameters[i] = assembler.declare(ast.getParameters().get(i));
+                if (assembler.slots == before && duplicate < 0) {
+                    duplicate = i;
+                }
+            }
+            List<Ast.Statement> statements = ast.getStatements();
+            if (statements.isEmpty()) {
+                push(Environment.NIL.getValue());
+            } else {
+                for (int i = 0; i < statements.size() - 1; i++) {
+                    visit(statements.get(i));
+                }
+                int start = assembler.length;
+                value(statements.get(statements.size() - 1));
+                assembler.handler(start, 0);
+            }
+            assembler.emit(RETURN);
+            Chunk chunk = assembler.toChunk();
+            assembler = outer;
+            Prototype prototype = new Prototype(ast.getName(), ast.getParameters(), parameters, duplicate, chunk);
+            assembler.emit(0, FUNCTION, assembler.constant(prototype));
+            return null;
+        }
+
+        /**
+         * Emits a check that always fails as the interpreter's cast of a node
+         * to the given class does.
+         */
+        private void require(Class<?> type, Ast ast) {
+            assembler.emit(0, REQUIRE, assembler.constant(type), assembler.constant(Environment.create(ast)));
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            if (!(ast.getExpression() instanceof Ast.Expression.Function)) {
+                require(Ast.Expression.Function.class, ast.getExpression());
+                return null;
+            }
+            visit(ast.getExpression());
+            assembler.emit(POP);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            if (ast.getValue().isPresent()) {
+                visit(ast.getValue().get());
+            } else {
+                push(Environment.NIL.getValue());
+            }
+            if (assembler.blocks.isEmpty()) {
+                assembler.emit(-1, DEFINE, assembler.constant(ast.getName()), 1);
+            } else {
+                int slot = assembler.declare(ast.getName());
+                assembler.emit(-1, DECLARE, slot, assembler.constant(ast.getName()));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                require(Ast.Expression.Access.class, ast.getReceiver());
+                return null;
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+            visit(ast.getValue());
+            int[] candidates = assembler.resolve(receiver.getName());
+            int global = assembler.constant(new Global(receiver.getName()));
+            if (receiver.getOffset().isPresent() && receiver.getOffset().get() instanceof Ast.Expression.Literal) {
+                Object literal = ((Ast.Expression.Literal) receiver.getOffset().get()).getLiteral();
+                Object index;
+                try {
+                    index = new BigInteger(literal.toString()).intValue();
+                } catch (RuntimeException e) {
+                    index = literal;
+                }
+                assembler.emit(-1, concat(new int[] {STORE_INDEX, global, assembler.constant(index), candidates.length}, candidates));
+            } else if (candidates.length == 0) {
+                assembler.emit(-1, STORE_GLOBAL, global);
+            } else if (candidates.length == 1) {
+                assembler.emit(-1, STORE_SLOT, candidates[0], global);
+            } else {
+                assembler.emit(-1, concat(new int[] {STORE_ANY, global, candidates.length}, candidates));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            visit(ast.getCondition());
+            int otherwise = assembler.jump(JUMP_IF_FALSE, -1);
+            block(ast.getThenStatements());
+            int end = assembler.jump(JUMP, 0);
+            assembler.patch(otherwise);
+            visit(ast.getCondition());
+            int skip = assembler.jump(JUMP_IF_TRUE, -1);
+            block(ast.getElseStatements());
+            assembler.patch(end);
+            assembler.patch(skip);
+            return null;
+        }
+
+        /**
+         * Compiles a switch as a chain of comparisons against its condition,
+         * which is kept in a slot of the switch's block. A default case runs
+         * and continues to the following cases, as in the interpreter.
+         */
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            visit(ast.getCondition());
+            int start = assembler.slots;
+            assembler.blocks.add(new HashMap<>());
+            int condition = assembler.allocate();
+            assembler.emit(-1, SWITCH, condition);
+            List<Integer> ends = new ArrayList<>();
+            for (Ast.Statement.Case statement : ast.getCases()) {
+                if (statement.getValue().isPresent()) {
+                    visit(statement.getValue().get());
+                    assembler.emit(-1, CASE, condition, -1);
+                    int next = assembler.length - 1;
+                    visit(statement);
+                    ends.add(assembler.jump(JUMP, 0));
+                    assembler.patch(next);
+                } else {
+                    visit(statement);
+                }
+            }
+            for (int end : ends) {
+                assembler.patch(end);
+            }
+            assembler.blocks.remove(assembler.blocks.size() - 1);
+            clear(start);
+            return null;
+        }
+
+        /**
+         * Compiles the statements of a case in the enclosing block, which is
+         * shared by all cases of a switch.
+         */
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            for (Ast.Statement statement : ast.getStatements()) {
+                visit(statement);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            int start = assembler.length;
+            visit(ast.getCondition());
+            int end = assembler.jump(JUMP_IF_FALSE, -1);
+            block(ast.getStatements());
+            assembler.emit(0, JUMP, start);
+            assembler.patch(end);
+            return null;
+        }
+
+        /**
+         * Compiles a return statement which is not the last statement of its
+         * function, and so only evaluates its value.
+         */
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            visit(ast.getValue());
+            assembler.emit(POP);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Error ast) {
+            assembler.emit(0, ERROR, assembler.constant("Cannot execute a syntax error: " + ast.getMessage() + "."));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            push(ast.getLiteral() == null ? Environment.NIL.getValue() : ast.getLiteral());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        /**
+         * Compiles a binary expression for its operator. Both operands are
+         * always evaluated, and each is guarded by a handler unless it is a
+         * literal, which cannot fail.
+         */
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            operand(ast.getLeft());
+            operand(ast.getRight());
+            switch (ast.getOperator()) {
+                case "&&": assembler.emit(AND); break;
+                case "||": assembler.emit(OR); break;
+                case "<": assembler.emit(LESS); break;
+                case ">": assembler.emit(GREATER); break;
+                case "==": assembler.emit(EQUAL); break;
+                case "+": assembler.emit(ADD); break;
+                case "-": assembler.emit(SUBTRACT); break;
+                case "*": assembler.emit(MULTIPLY); break;
+                case "/": assembler.emit(DIVIDE); break;
+                case "^": assembler.emit(POWER); break;
+                default: assembler.emit(INVALID); break;
+            }
+            return null;
+        }
+
+        private void operand(Ast.Expression ast) {
+            Ast.Expression inner = ast;
+            while (inner instanceof Ast.Expression.Group) {
+                inner = ((Ast.Expression.Group) inner).getExpression();
+            }
+            if (inner instanceof Ast.Expression.Literal) {
+                visit(inner);
+                return;
+            }
+            int start = assembler.length;
+            int depth = assembler.stack;
+            visit(ast);
+            assembler.handler(start, depth);
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            int[] candidates = assembler.resolve(ast.getName());
+            int global = assembler.constant(new Global(ast.getName()));
+            if (candidates.length == 0) {
+                assembler.emit(1, LOAD_GLOBAL, global);
+            } else if (candidates.length == 1) {
+                assembler.emit(1, LOAD_SLOT, candidates[0], global);
+            } else {
+                assembler.emit(1, concat(new int[] {LOAD_ANY, global, candidates.length}, candidates));
+            }
+            if (ast.getOffset().isPresent() && ast.getOffset().get() instanceof Ast.Expression.Literal
+                    && ((Ast.Expression.Literal) ast.getOffset().get()).getLiteral() instanceof BigInteger) {
+                int index = ((BigInteger) ((Ast.Expression.Literal) ast.getOffset().get()).getLiteral()).intValue();
+                assembler.emit(0, INDEX, index);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            for (Ast.Expression argument : ast.getArguments()) {
+                visit(argument);
+            }
+            int count = ast.getArguments().size();
+            assembler.emit(1 - count, CALL, assembler.constant(new Callee(ast.getName(), count, assembler.visible())), count);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            Object[] values = new Object[ast.getValues().size()];
+            for (int i = 0; i < values.length; i++) {
+                Ast.Expression value = ast.getValues().get(i);
+                if (!(value instanceof Ast.Expression.Literal)) {
+                    require(Ast.Expression.Literal.class, value);
+                    push(Environment.NIL.getValue());
+                    return null;
+                }
+                values[i] = ((Ast.Expression.Literal) value).getLiteral();
+            }
+            assembler.emit(1, LIST, assembler.constant(values));
+            return null;
+        }
+
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+}
@@ -0,0 +1,218 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tests the tools that store and lay out ASTs outside of the parser.
+ */
+final class AstTests {
+
+    @Test
+    void testArena() {
+        for (long seed = 0; seed < 20; seed++) {
+            Ast.Source ast = new ProgramGenerator(seed).setDepth(4).setNesting(3).generate();
+            AstArena arena = AstArena.of(ast);
+            Assertions.assertEquals(ast, arena.toAst(arena.getRoot()));
+        }
+        AstArena arena = AstArena.of(new Parser(new Lexer("VAL x: Integer = 1 + y[2];").lex()).parseSource());
+        int global = arena.getChild(arena.getRoot(), 0);
+        int binary = arena.getChild(global, 0);
+        Assertions.assertEquals(AstArena.Kind.GLOBAL, arena.getKind(global));
+        Assertions.assertEquals("x", arena.getName(global));
+        Assertions.assertEquals("Integer", arena.getValue(global, 1));
+        Assertions.assertEquals("+", arena.getOperator(binary));
+        Assertions.assertEquals(BigInteger.ONE, arena.getLiteral(arena.getChild(binary, 0)));
+        Assertions.assertEquals(AstArena.Kind.ACCESS, arena.getKind(arena.getChild(binary, 1)));
+        Assertions.assertTrue(arena.getChild(binary, 0) < binary && arena.getChild(binary, 1) < binary);
+    }
+
+    @Test
+    void testAccept() {
+        Ast.Source generated = new ProgramGenerator(0).setDepth(4).setNesting(3).generate();
+        List<Ast.Function> functions = new ArrayList<>(generated.getFunctions());
+        functions.add(new Ast.Function("error", Arrays.asList(), Arrays.asList(), Optional.empty(),
+                Arrays.asList(new Ast.Statement.Error("Missing semicolon", 42))));
+        AstArena arena = AstArena.of(new Ast.Source(generated.getGlobals(), functions));
+        // every node is reached once, through the method for its kind
+        Assertions.assertEquals(arena.size(), arena.accept(arena.getRoot(), new Counter(arena)));
+    }
+
+    @Test
+    void testCodec() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            Ast.Source ast = new ProgramGenerator(seed).setDepth(4).setNesting(3).generate();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AstCodec.write(ast, out);
+            Assertions.assertEquals(ast, AstCodec.read(new ByteArrayInputStream(out.toByteArray())));
+        }
+        Ast.Source ast = new Ast.Source(
+                Arrays.asList(new Ast.Global("x", "Decimal", false, Optional.of(new Ast.Expression.Literal(new BigDecimal("-12.500")))),
+                        new Ast.Global("y", "Any", true, Optional.empty())),
+                Arrays.asList(new Ast.Function("f", Arrays.asList("a"), Arrays.asList("String"), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Declaration("c", Optional.empty(), Optional.of(new Ast.Expression.Literal('\u00e9'))),
+                        new Ast.Statement.Declaration("s", Optional.of("String"), Optional.of(new Ast.Expression.Literal("\u00e9\n"))),
+                        new Ast.Statement.Expression(new Ast.Expression.Literal(new BigInteger("-123456789012345678901234567890"))),
+                        new Ast.Statement.Error("Missing semicolon", 42)
+                ))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(ast, out);
+        byte[] bytes = out.toByteArray();
+        Assertions.assertEquals(ast, AstCodec.read(bytes));
+        Assertions.assertThrows(IOException.class, () -> AstCodec.read(Arrays.copyOf(bytes, bytes.length - 1)));
+        byte[] magnitude = new BigInteger("-123456789012345678901234567890").toByteArray();
+        byte[] empty = bytes.clone();
+        for (int i = 0; i + magnitude.length < empty.length; i++) {
+            if (empty[i] == magnitude.length && Arrays.equals(magnitude, Arrays.copyOfRange(empty, i + 1, i + 1 + magnitude.length))) {
+                empty[i] = 0;
+            }
+        }
+        Assertions.assertThrows(IOException.class, () -> AstCodec.read(empty));
+        bytes[4]++;
+        Assertions.assertThrows(IOException.class, () -> AstCodec.read(bytes));
+    }
+
+    @Test
+    void testMalformedCounts() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(new Ast.Source(Arrays.asList(), Arrays.asList()), out);
+        byte[] header = Arrays.copyOf(out.toByteArray(), 5);
+        // a count that would need a huge list, a negative count, and one longer than the input
+        for (byte[] count : new byte[][] {
+                {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F},
+                {0x05, 0x00},
+                {0x00, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07}}) {
+            byte[] bytes = Arrays.copyOf(header, header.length + count.length);
+            System.arraycopy(count, 0, bytes, header.length, count.length);
+            Assertions.assertThrows(IOException.class, () -> AstCodec.read(bytes));
+        }
+    }
+
+    /**
+     * Counts the nodes of an arena, checking that {@link AstArena#accept}
+     * calls the method for the kind of each one.
+     */
+    private static final class Counter implements AstArena.Visitor<Integer> {
+
+        private final AstArena arena;
+
+        private Counter(AstArena arena) {
+            this.arena = arena;
+        }
+
+        private int count(AstArena.Kind kind, int node) {
+            Assertions.assertEquals(kind, arena.getKind(node));
+            int count = 1;
+            for (int i = 0; i < arena.getChildCount(node); i++) {
+                int child = arena.getChild(node, i);
+                if (child != AstArena.NONE) {
+                    count += arena.accept(child, this);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visitSource(int node) {
+            return count(AstArena.Kind.SOURCE, node);
+        }
+
+        @Override
+        public Integer visitGlobal(int node) {
+            return count(AstArena.Kind.GLOBAL, node);
+        }
+
+        @Override
+        public Integer visitFunction(int node) {
+            return count(AstArena.Kind.FUNCTION, node);
+        }
+
+        @Override
+        public Integer visitExpression(int node) {
+            return count(AstArena.Kind.EXPRESSION, node);
+        }
+
+        @Override
+        public Integer visitDeclaration(int node) {
+            return count(AstArena.Kind.DECLARATION, node);
+        }
+
+        @Override
+        public Integer visitAssignment(int node) {
+            return count(AstArena.Kind.ASSIGNMENT, node);
+        }
+
+        @Override
+        public Integer visitIf(int node) {
+            return count(AstArena.Kind.IF, node);
+        }
+
+        @Override
+        public Integer visitSwitch(int node) {
+            return count(AstArena.Kind.SWITCH, node);
+        }
+
+        @Override
+        public Integer visitCase(int node) {
+            return count(AstArena.Kind.CASE, node);
+        }
+
+        @Override
+        public Integer visitWhile(int node) {
+            return count(AstArena.Kind.WHILE, node);
+        }
+
+        @Override
+        public Integer visitReturn(int node) {
+            return count(AstArena.Kind.RETURN, node);
+        }
+
+        @Override
+        public Integer visitError(int node) {
+            return count(AstArena.Kind.ERROR, node);
+        }
+
+        @Override
+        public Integer visitLiteral(int node) {
+            return count(AstArena.Kind.LITERAL, node);
+        }
+
+        @Override
+        public Integer visitGroup(int node) {
+            return count(AstArena.Kind.GROUP, node);
+        }
+
+        @Override
+        public Integer visitBinary(int node) {
+            return count(AstArena.Kind.BINARY, node);
+        }
+
+        @Override
+        public Integer visitAccess(int node) {
+            return count(AstArena.Kind.ACCESS, node);
+        }
+
+        @Override
+        public Integer visitCall(int node) {
+            return count(AstArena.Kind.CALL, node);
+        }
+
+        @Override
+        public Integer visitList(int node) {
+            return count(AstArena.Kind.LIST, node);
+        }
+
+    }
+
+}
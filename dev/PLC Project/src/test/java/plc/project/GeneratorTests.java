@@ -81,6 +81,48 @@ public class GeneratorTests {
         test(astList, expected);
     }
 
+    @Test
+    void testBytecode() throws ReflectiveOperationException {
+        String input = "VAR total: Integer = 0;\n"
+                + "VAL scale: Decimal = 1.5;\n"
+                + "LIST nums: Integer = [1, 2, 3];\n"
+                + "VAR name: String = \"x\";\n"
+                + "FUN loop(n: Integer): Integer DO\n"
+                + "    LET sum: Integer = 0;\n"
+                + "    LET i: Integer = 0;\n"
+                + "    WHILE i < n DO\n"
+                + "        LET j: Integer = 0;\n"
+                + "        WHILE j < 10 DO sum = sum + j * 2; j = j + 1; END\n"
+                + "        i = i + 1;\n"
+                + "    END\n"
+                + "    RETURN sum;\n"
+                + "END\n"
+                + "FUN grade(c: Character): Integer DO\n"
+                + "    SWITCH c CASE 'a': RETURN 1; CASE 'b': RETURN 2; DEFAULT RETURN 0; END\n"
+                + "END\n"
+                + "FUN mix(x: Integer): Decimal DO RETURN x * scale + 2 ^ 3 / 2; END\n"
+                + "FUN concat(x: Integer): String DO name = name + x + 'c' + TRUE + NIL; RETURN name; END\n"
+                + "FUN bump(): Boolean DO\n"
+                + "    nums[1] = nums[1] + 40;\n"
+                + "    total = nums[0] + nums[1] + nums[2];\n"
+                + "    RETURN 2.5 > 1 && total == 46 || FALSE;\n"
+                + "END\n"
+                + "FUN main(): Integer DO RETURN 0; END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Class<?> type = new BytecodeGenerator("Test").load(ast);
+        Object object = type.getConstructor().newInstance();
+        Assertions.assertEquals(90, type.getMethod("loop", int.class).invoke(object, 1));
+        Assertions.assertEquals(2, type.getMethod("grade", char.class).invoke(object, 'b'));
+        Assertions.assertEquals(0, type.getMethod("grade", char.class).invoke(object, 'z'));
+        Assertions.assertEquals(7.0, type.getMethod("mix", int.class).invoke(object, 2));
+        Assertions.assertEquals("x7ctruenull", type.getMethod("concat", int.class).invoke(object, 7));
+        Assertions.assertEquals(true, type.getMethod("bump").invoke(object));
+        Assertions.assertArrayEquals(new int[] {1, 42, 3}, (int[]) type.getField("nums").get(object));
+        Assertions.assertNotNull(type.getMethod("main", String[].class));
+        Assertions.assertThrows(RuntimeException.class, () -> new BytecodeGenerator("Test").generate(
+                new Parser(new Lexer("VAL x: Integer = 1; FUN f(): Nil DO x = 2; END").lex()).parseSource()));
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     void testDeclarationStatement(String test, Ast.Statement.Declaration ast, String expected) {
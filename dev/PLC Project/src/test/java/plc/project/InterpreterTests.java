@@ -13,6 +13,8 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -449,6 +451,277 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
+    @Test
+    void testGenerated() {
+        for (long seed = 0; seed < 10; seed++) {
+            // != is not supported by the interpreter
+            Ast.Source ast = new ProgramGenerator(seed).setGlobals(50)
+                    .setOperators("&&", "||", "<", ">", "==", "+", "-", "*", "/", "^")
+                    .generate();
+            Assertions.assertEquals(new ProgramGenerator(seed).setGlobals(50).generateSource(),
+                    new ProgramGenerator(seed).setGlobals(50).generateSource());
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            PrintStream sysout = System.out;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+            try {
+                Assertions.assertDoesNotThrow(() -> interpreter.visit(ast));
+            } finally {
+                System.setOut(sysout);
+            }
+            // main prints the result of every other function
+            Assertions.assertTrue(out.toString().split(System.lineSeparator()).length >= ast.getFunctions().size() - 1);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCompiled(String test, Supplier<Engine> compiled) {
+        for (long seed = 0; seed < 10; seed++) {
+            Ast.Source ast = new ProgramGenerator(seed).setGlobals(50)
+                    .setOperators("&&", "||", "<", ">", "==", "+", "-", "*", "/", "^")
+                    .generate();
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            Engine engine = compiled.get();
+            Assertions.assertEquals(run(() -> interpreter.visit(ast)), run(() -> engine.execute.apply(ast)));
+            for (Ast.Global global : ast.getGlobals()) {
+                Assertions.assertEquals(interpreter.getScope().lookupVariable(global.getName()).getValue().getValue(),
+                        engine.scope.lookupVariable(global.getName()).getValue().getValue());
+            }
+            for (Ast.Function function : ast.getFunctions()) {
+                List<Environment.PlcObject> arguments = function.getParameterTypeNames().stream()
+                        .map(InterpreterTests::argument)
+                        .collect(Collectors.toList());
+                // each call starts from a freshly run program, as a call may assign globals
+                Interpreter expected = new Interpreter(new Scope(null));
+                run(() -> expected.visit(ast));
+                Engine actual = compiled.get();
+                run(() -> actual.execute.apply(ast));
+                Assertions.assertEquals(
+                        run(() -> expected.getScope().lookupFunction(function.getName(), arguments.size()).invoke(arguments)),
+                        run(() -> actual.scope.lookupFunction(function.getName(), arguments.size()).invoke(arguments)),
+                        "seed " + seed + ", function " + function.getName());
+            }
+        }
+        Ast.Source ast = new Parser(new Lexer("LIST list: Integer = [1, 2, 3];\n"
+                + "VAR base: String = \"\";\n"
+                + "FUN f(n: Integer, c: Character): Integer DO\n"
+                + "    LET s: Integer = 0;\n"
+                + "    LET i: Integer = 0;\n"
+                + "    WHILE i < n DO\n"
+                + "        LET x: Integer = i * 2;\n"
+                + "        IF x > 4 DO s = s + x; ELSE LET i: Integer = 0; s = s - 1; END\n"
+                + "        i = i + 1;\n"
+                + "    END\n"
+                + "    SWITCH c CASE 'a': LET x: Integer = 10; s = s * x; DEFAULT s = s + list[1]; END\n"
+                + "    list[0] = s;\n"
+                + "    RETURN s + list[0];\n"
+                + "END\n"
+                + "FUN fib(n: Integer): Integer DO\n"
+                + "    LET r: Integer = n;\n"
+                + "    IF 1 < n DO r = fib(n - 1) + fib(n - 2); END\n"
+                + "    RETURN r;\n"
+                + "END\n"
+                + "FUN g(): Decimal DO base = converter(fib(10), 2); RETURN logarithm(1.0); END").lex()).parseSource();
+        for (char c : new char[] {'a', 'b'}) {
+            List<Environment.PlcObject> arguments = Arrays.asList(Environment.create(BigInteger.TEN), Environment.create(c));
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            interpreter.visit(ast);
+            Engine engine = compiled.get();
+            engine.execute.apply(ast);
+            Object expected = interpreter.getScope().lookupFunction("f", 2).invoke(arguments).getValue();
+            Assertions.assertEquals(BigInteger.valueOf(c == 'a' ? 1620 : 166), expected);
+            Assertions.assertEquals(expected, engine.scope.lookupFunction("f", 2).invoke(arguments).getValue());
+            Assertions.assertEquals(interpreter.getScope().lookupVariable("list").getValue().getValue(),
+                    engine.scope.lookupVariable("list").getValue().getValue());
+        }
+        // variables are local to each call, so a function can be called more than once from the same block
+        Engine engine = compiled.get();
+        engine.execute.apply(ast);
+        Environment.Function fib = engine.scope.lookupFunction("fib", 1);
+        Assertions.assertEquals(BigInteger.valueOf(55), fib.invoke(Arrays.asList(Environment.create(BigInteger.TEN))).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(8), fib.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(6)))).getValue());
+        Assertions.assertEquals(new BigDecimal("0.0"), engine.scope.lookupFunction("g", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals("110111", engine.scope.lookupVariable("base").getValue().getValue());
+        // LET x = 1; LET x = 2;
+        Ast.Function duplicate = new Ast.Function("g", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Declaration("x", Optional.of(new Ast.Expression.Literal(BigInteger.ONE))),
+                new Ast.Statement.Declaration("x", Optional.of(new Ast.Expression.Literal(BigInteger.TEN))),
+                new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "x"))));
+        Engine redeclared = compiled.get();
+        redeclared.execute.apply(duplicate);
+        Assertions.assertThrows(RuntimeException.class, () -> redeclared.scope.lookupFunction("g", 0).invoke(Arrays.asList()));
+        // functions read and assign the variables of their callers
+        Ast.Source scoping = new Parser(new Lexer("FUN set(): Integer DO x = 5; END\n"
+                + "FUN assigned(): Integer DO LET x: Integer = 1; set(); RETURN x; END\n"
+                + "FUN show(): Integer DO print(x); END\n"
+                + "FUN printed(): Integer DO LET x: Integer = 1; show(); RETURN x; END\n"
+                + "FUN add(): Integer DO RETURN y + w; END\n"
+                + "FUN nested(w: Integer): Integer DO RETURN add(); END\n"
+                + "FUN read(): Integer DO LET y: Integer = 100; RETURN nested(7); END\n"
+                + "FUN hide(): Integer DO LET z: Integer = 5; END\n"
+                + "FUN hidden(): Integer DO LET z: Integer = 1; LET r: Integer = 0; IF TRUE DO hide(); r = z; END RETURN r * 10 + z; END").lex()).parseSource();
+        for (String name : new String[] {"assigned", "printed", "read", "hidden"}) {
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            interpreter.visit(scoping);
+            Engine caller = compiled.get();
+            caller.execute.apply(scoping);
+            PrintStream sysout = System.out;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+            Object expected;
+            Object actual;
+            try {
+                expected = interpreter.getScope().lookupFunction(name, 0).invoke(Arrays.asList()).getValue();
+                actual = caller.scope.lookupFunction(name, 0).invoke(Arrays.asList()).getValue();
+            } finally {
+                System.setOut(sysout);
+            }
+            if (name.equals("hidden")) {
+                // a function's own variables are local, so hide does not hide z from hidden
+                Assertions.assertEquals(BigInteger.valueOf(51), expected);
+                Assertions.assertEquals(BigInteger.valueOf(11), actual);
+            } else {
+                Assertions.assertEquals(BigInteger.valueOf(name.equals("assigned") ? 5 : name.equals("read") ? 107 : 1), expected);
+                Assertions.assertEquals(expected, actual);
+            }
+            Assertions.assertEquals(name.equals("printed") ? "1" + System.lineSeparator() + "1" + System.lineSeparator() : "", out.toString());
+        }
+    }
+
+    private static Stream<Arguments> testCompiled() {
+        return Stream.of(
+                Arguments.of("Closure Compiler", (Supplier<Engine>) () -> {
+                    ClosureCompiler compiler = new ClosureCompiler(new Scope(null));
+                    return new Engine(compiler::execute, compiler.getScope());
+                }),
+                Arguments.of("Virtual Machine", (Supplier<Engine>) () -> {
+                    VirtualMachine machine = new VirtualMachine(new Scope(null));
+                    return new Engine(machine::execute, machine.getScope());
+                })
+        );
+    }
+
+    /**
+     * Returns the value computed by the given code followed by what it prints.
+     */
+    private static List<Object> run(Supplier<Environment.PlcObject> code) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            return Arrays.asList(code.get().getValue(), out.toString());
+        } finally {
+            System.setOut(sysout);
+        }
+    }
+
+    /**
+     * Returns an argument of the given type to call generated functions with.
+     */
+    private static Environment.PlcObject argument(String type) {
+        switch (type) {
+            case "Integer": return Environment.create(BigInteger.valueOf(3));
+            case "Decimal": return Environment.create(new BigDecimal("2.5"));
+            case "Boolean": return Environment.create(true);
+            case "Character": return Environment.create('a');
+            default: return Environment.create("s");
+        }
+    }
+
+    /**
+     * A compiled way of executing ASTs, with the scope it defines them in.
+     */
+    private static final class Engine {
+
+        private final Function<Ast, Environment.PlcObject> execute;
+        private final Scope scope;
+
+        private Engine(Function<Ast, Environment.PlcObject> execute, Scope scope) {
+            this.execute = execute;
+            this.scope = scope;
+        }
+
+    }
+
+    @Test
+    void testVirtualMachine() {
+        Ast.Source ast = new Parser(new Lexer("VAR log: Integer = 0;\n"
+                + "FUN pair(a: Integer, b: Integer): Integer DO RETURN a + b; END\n"
+                + "FUN fail(a: Integer): Integer DO log = a; LET y: Integer = missing; RETURN a; END\n"
+                + "FUN nested(): Boolean DO RETURN TRUE && ((1 + (2 * missing)) == 3); END\n"
+                + "FUN branch(): Integer DO LET x: Integer = 1; IF 0 < x DO x = 2 + missing; END END\n"
+                + "FUN early(): Integer DO LET x: Integer = 1; IF 0 < x DO x = 2 + missing; END RETURN x; END\n"
+                + "FUN loop(): Integer DO LET i: Integer = 0; WHILE TRUE DO i = i + 1; IF 2 < i DO log = i * missing; END END END\n"
+                + "FUN arguments(): Boolean DO RETURN TRUE && (pair(4, missing) == 8); END\n"
+                + "FUN body(): Boolean DO RETURN TRUE && (pair(1, fail(4)) == 8); END\n"
+                + "FUN leak(): Integer DO LET q: Integer = 3; RETURN fail(q); END\n"
+                + "FUN probe(): Integer DO RETURN q; END\n"
+                + "FUN after(): Integer DO\n"
+                + "    LET n: Integer = 0;\n"
+                + "    WHILE n < 3 DO n = n + 1; LET b: Boolean = arguments() && body(); END\n"
+                + "    RETURN pair(n, log);\n"
+                + "END").lex()).parseSource();
+        VirtualMachine machine = new VirtualMachine(new Scope(null));
+        machine.execute(ast);
+        Scope scope = machine.getScope();
+        // each failing operand is reset to the depth of its own handler, so the outer operands still evaluate
+        Assertions.assertEquals(false, scope.lookupFunction("nested", 0).invoke(Arrays.asList()).getValue());
+        // a failing last statement returns nil from inside a block, but not before it
+        Assertions.assertEquals(Environment.NIL.getValue(), scope.lookupFunction("branch", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(Environment.NIL.getValue(), scope.lookupFunction("loop", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("early", 0).invoke(Arrays.asList()));
+        // a call failing in its arguments or its body leaves nothing on the stack
+        Assertions.assertEquals(false, scope.lookupFunction("arguments", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(false, scope.lookupFunction("body", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(4), scope.lookupVariable("log").getValue().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(7), scope.lookupFunction("after", 0).invoke(Arrays.asList()).getValue());
+        // nor leaves the variables of its caller visible once it has failed
+        Assertions.assertEquals(Environment.NIL.getValue(), scope.lookupFunction("leak", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(Environment.NIL.getValue(), scope.lookupFunction("probe", 0).invoke(Arrays.asList()).getValue());
+        for (String name : new String[] {"nested", "branch", "loop", "arguments", "body", "after"}) {
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            interpreter.visit(ast);
+            Assertions.assertEquals(interpreter.getScope().lookupFunction(name, 0).invoke(Arrays.asList()).getValue(),
+                    scope.lookupFunction(name, 0).invoke(Arrays.asList()).getValue());
+        }
+    }
+
+    @Test
+    void testResolvedVariables() {
+        Ast.Source ast = new Parser(new Lexer("FUN g(): Integer DO LET x: Integer = 5; END\n"
+                + "FUN f(): Integer DO\n"
+                + "    LET x: Integer = 1;\n"
+                + "    LET y: Integer = 0;\n"
+                + "    IF TRUE DO g(); y = x; END\n"
+                + "    RETURN y * 10 + x;\n"
+                + "END\n"
+                + "FUN sum(m: Integer): Integer DO\n"
+                + "    LET s: Integer = 0;\n"
+                + "    LET i: Integer = 0;\n"
+                + "    WHILE i < m DO LET t: Integer = i; s = s + t; i = i + 1; END\n"
+                + "    RETURN s;\n"
+                + "END\n"
+                + "FUN count(k: Integer): Integer DO\n"
+                + "    IF 0 < k DO count(k - 1); END\n"
+                + "    RETURN k;\n"
+                + "END").lex()).parseSource();
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.visit(ast);
+        Scope scope = interpreter.getScope();
+        // the x defined by g in the IF hides the one f declared
+        Assertions.assertEquals(BigInteger.valueOf(51), scope.lookupFunction("f", 0).invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(45), scope.lookupFunction("sum", 1).invoke(Arrays.asList(Environment.create(BigInteger.TEN))).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(5), scope.lookupFunction("count", 1).invoke(Arrays.asList(Environment.create(BigInteger.valueOf(5)))).getValue());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Resolver.resolve(new Ast.Global("x", true, Optional.empty())));
+        // a recovered function can be defined, but fails when the error runs
+        Ast.Function recovered = new Ast.Function("h", Arrays.asList(), Arrays.asList(
+                new Ast.Statement.Error("Missing semicolon", 0),
+                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))));
+        Assertions.assertEquals(Environment.NIL.getValue(), interpreter.visit(recovered).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("h", 0).invoke(Arrays.asList()));
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -2,12 +2,23 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -100,6 +111,7 @@ public class LexerTests {
         return Stream.of(
                 Arguments.of("Character", "(", true),
                 Arguments.of("Comparison", "!=", true),
+                Arguments.of("Minus", "-", true),
                 Arguments.of("Space", " ", false),
                 Arguments.of("Tab", "\t", false)
         );
@@ -151,6 +163,205 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @Test
+    void testRecovery() {
+        List<ParseException> errors = new ArrayList<>();
+        List<Token> tokens = new Lexer("\"unterminated\nx = 01; \"bad\\escape\" y '' 1. z").lex(errors);
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 14),
+                new Token(Token.Type.OPERATOR, "=", 16),
+                new Token(Token.Type.IDENTIFIER, "y", 35),
+                new Token(Token.Type.IDENTIFIER, "z", 43)
+        ), tokens);
+        Assertions.assertEquals(Arrays.asList(13, 18, 27, 39, 42),
+                errors.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testEngines(String test, String input) {
+        Assertions.assertEquals(lexWith(input, Lexer.Engine.REGEX), lexWith(input, Lexer.Engine.TABLE));
+    }
+
+    private static Stream<Arguments> testEngines() {
+        return Stream.of(
+                Arguments.of("Program", "VAR x: Integer = -1;\nFUN main() DO\n\tprint(\"x\\n\" + x);\nEND"),
+                Arguments.of("Operators", "a==b!=c&&d||e?f<=g - h"),
+                Arguments.of("Numbers", "0 1.5 -2 - 3- 0.25"),
+                Arguments.of("Characters", "'c' '\\n' '\"' '''"),
+                Arguments.of("Non-ASCII", "\"caf\u00e9\" \u00e9t\u00e9 \u03bb"),
+                Arguments.of("Leading Zero", "x = 01;"),
+                Arguments.of("Trailing Decimal", "1. + 2"),
+                Arguments.of("Invalid Escape", "\"invalid\\escape\""),
+                Arguments.of("Unterminated", "\"unterminated\nx")
+        );
+    }
+
+    @Test
+    void testReader() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("LET name").append(i).append(" = \"string ").append(i).append("\\n\";\n");
+        }
+        String input = builder.toString();
+        List<Token> expected = new Lexer(input).lex();
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+        List<Token> iterated = new ArrayList<>();
+        new Lexer(new StringReader(input)).iterator().forEachRemaining(iterated::add);
+        Assertions.assertEquals(expected, iterated);
+    }
+
+    @Test
+    void testReaderException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new StringReader("\"unterminated")).lex());
+        Assertions.assertEquals(13, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMapped(String test, String input, @TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.plc");
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new Lexer(input).lex(), Lexer.map(path).lex());
+    }
+
+    private static Stream<Arguments> testMapped() {
+        return Stream.of(
+                Arguments.of("ASCII", "VAR x: Integer = -1;\nFUN main() DO\n\tprint(\"x\\n\" + x);\nEND"),
+                Arguments.of("Non-ASCII", "LET s = \"caf\u00e9 \u03bb\";\nprint(s);")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testBuffer(String test, String input) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        Assertions.assertEquals(new Lexer(input).lex(), buffer);
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), new Parser(buffer).parseSource());
+    }
+
+    private static Stream<Arguments> testBuffer() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Global", "VAL name: Type = expr;"),
+                Arguments.of("Globals", "VAR x: Integer = 1; VAL s: String = \"caf\u00e9\";")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String line, int lines, boolean newlines) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            builder.append(line).append(i).append(newlines && i % 7 == 0 ? "\n" : " ");
+        }
+        String input = builder.toString();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Lexer sequential = new Lexer(input);
+            Lexer parallel = new Lexer(input);
+            Assertions.assertEquals(lexWith(sequential::lex), lexWith(() -> parallel.lexParallel(pool)));
+            Assertions.assertEquals(sequential.getSymbols().size(), parallel.getSymbols().size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Statements", "LET x = \"a \\\" b\" + '\"' + ''' + 1.5 + name", 40000, true),
+                Arguments.of("Single Line", "LET x = \"a \\\" b\" + '\"' + ''' + 1.5 + name", 40000, false),
+                Arguments.of("Strings", "\"one two three four five six seven eight nine\" ", 20000, false),
+                Arguments.of("Characters", "'c' '\\n' '\"' 'ab' x", 40000, true)
+        );
+    }
+
+    @Test
+    void testParallelException() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            builder.append(i == 40000 ? "\"unterminated " : "\"string ").append(i).append("\"\n");
+        }
+        String input = builder.toString();
+        Assertions.assertEquals(lexWith(() -> new Lexer(input).lex()), lexWith(() -> new Lexer(input).lexParallel()));
+    }
+
+    @Test
+    void testRelex() {
+        String[] snippets = {"x", "1", " ", "\n", "=", ".5", "\"", "'", "\"a b\"", "'c'", "DO", "-", "!="};
+        Random random = new Random(0);
+        String text = "LET name = \"a string\" + 'c';\nFUN f(x) DO\n    print(x != 1.5);\nEND";
+        Lexer lexer = new Lexer(text);
+        List<Token> tokens = lexer.lex();
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+            String inserted = random.nextBoolean() ? snippets[random.nextInt(snippets.length)] : "";
+            String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            List<Token> previous = tokens;
+            Object expected = lexWith(() -> new Lexer(edited).lex());
+            Object actual = lexWith(() -> new Lexer(edited, lexer.getSymbols()).relex(previous, offset, removed, inserted.length()));
+            Assertions.assertEquals(expected, actual, edited);
+            if (actual instanceof List && text.length() < 400) {
+                text = edited;
+                tokens = new Lexer(edited, lexer.getSymbols()).relex(previous, offset, removed, inserted.length());
+            }
+        }
+    }
+
+    @Test
+    void testRelexReuse() {
+        String text = "LET x = \"abc\";\nLET y = 1;";
+        Lexer lexer = new Lexer(text);
+        List<Token> tokens = lexer.lex();
+        List<Token> relexed = new Lexer("LET x = \"abd\";\nLET y = 1;", lexer.getSymbols()).relex(tokens, 11, 1, 1);
+        Assertions.assertEquals(new Token(Token.Type.STRING, "\"abd\"", 8), relexed.get(3));
+        Assertions.assertSame(tokens.get(0), relexed.get(0));
+        Assertions.assertSame(tokens.get(4), relexed.get(4));
+        Assertions.assertSame(tokens.get(5), relexed.get(5));
+        Assertions.assertSame(tokens.get(9), relexed.get(9));
+    }
+
+    @Test
+    void testSymbols() {
+        Lexer lexer = new Lexer("LET name = name + other; WHILE name DO END");
+        List<Token> tokens = lexer.lex();
+        Assertions.assertEquals(SymbolTable.keyword("LET"), tokens.get(0).getSymbol());
+        Assertions.assertEquals(SymbolTable.keyword("WHILE"), tokens.get(7).getSymbol());
+        Assertions.assertEquals(tokens.get(1).getSymbol(), tokens.get(3).getSymbol());
+        Assertions.assertSame(tokens.get(1).getLiteral(), tokens.get(3).getLiteral());
+        Assertions.assertNotEquals(tokens.get(1).getSymbol(), tokens.get(5).getSymbol());
+        Assertions.assertEquals(SymbolTable.NONE, tokens.get(2).getSymbol());
+        Assertions.assertEquals("other", lexer.getSymbols().getName(tokens.get(5).getSymbol()));
+    }
+
+    @Test
+    void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(symbols.intern("name" + i), symbols.intern("xname" + i + "x", 1, ("name" + i).length()));
+        }
+        Assertions.assertEquals(SymbolTable.keyword("END"), symbols.intern("END"));
+        Assertions.assertEquals("name500", symbols.getName(symbols.intern("name500")));
+    }
+
+    /**
+     * Lexes the input with the given engine, returning either the tokens or
+     * the message and index of the {@link ParseException} that was thrown.
+     */
+    private static Object lexWith(String input, Lexer.Engine engine) {
+        return lexWith(() -> new Lexer(input, engine).lex());
+    }
+
+    private static Object lexWith(Supplier<List<Token>> lexer) {
+        try {
+            return lexer.get();
+        } catch (ParseException e) {
+            return e.getMessage() + "@" + e.getIndex();
+        }
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
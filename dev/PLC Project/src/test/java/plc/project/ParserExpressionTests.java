@@ -141,6 +141,10 @@ final class ParserExpressionTests {
                 Arguments.of("Escape b in string",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\bWorld!\"", 0)),
                         new Ast.Expression.Literal("Hello,\bWorld!")
+                ),
+                Arguments.of("Multiple Escapes",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"\\t\\\"quoted\\\"\\r\\n\"", 0)),
+                        new Ast.Expression.Literal("\t\"quoted\"\r\n")
                 )
         );
     }
@@ -328,6 +332,79 @@ final class ParserExpressionTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testPrecedence(String test, String input, Ast.Expression expected) {
+        test(new Lexer(input).lex(), expected, Parser::parseExpression);
+    }
+
+    private static Stream<Arguments> testPrecedence() {
+        Ast.Expression a = new Ast.Expression.Access(Optional.empty(), "a");
+        Ast.Expression b = new Ast.Expression.Access(Optional.empty(), "b");
+        Ast.Expression c = new Ast.Expression.Access(Optional.empty(), "c");
+        return Stream.of(
+                Arguments.of("Multiplication Binds Tighter", "a + b * c",
+                        new Ast.Expression.Binary("+", a, new Ast.Expression.Binary("*", b, c))
+                ),
+                Arguments.of("Left Associative", "a - b - c",
+                        new Ast.Expression.Binary("-", new Ast.Expression.Binary("-", a, b), c)
+                ),
+                Arguments.of("All Levels", "a || b < c + a * b",
+                        new Ast.Expression.Binary("||", a, new Ast.Expression.Binary("<", b,
+                                new Ast.Expression.Binary("+", c, new Ast.Expression.Binary("*", a, b))))
+                ),
+                Arguments.of("Group", "(a || b) * c",
+                        new Ast.Expression.Binary("*", new Ast.Expression.Group(new Ast.Expression.Binary("||", a, b)), c)
+                ),
+                Arguments.of("Literal Operands", "1 * 2.5",
+                        new Ast.Expression.Binary("*", new Ast.Expression.Literal(BigInteger.ONE),
+                                new Ast.Expression.Literal(new BigDecimal("2.5")))
+                ),
+                Arguments.of("Missing Operand", "a + * b", null)
+        );
+    }
+
+    @Test
+    void testLongChain() {
+        // x + x * x + x * x + ..., walked iteratively since the tree is too
+        // deep for the recursive equals and toString
+        StringBuilder builder = new StringBuilder("x");
+        for (int i = 0; i < 100000; i++) {
+            builder.append(" + x * x");
+        }
+        Ast.Expression expression = new Parser(new Lexer(builder.toString()).lex()).parseExpression();
+        int terms = 0;
+        while (expression instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) expression;
+            Assertions.assertEquals("+", binary.getOperator());
+            Assertions.assertEquals("*", ((Ast.Expression.Binary) binary.getRight()).getOperator());
+            expression = binary.getLeft();
+            terms++;
+        }
+        Assertions.assertEquals(100000, terms);
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), expression);
+    }
+
+    @Test
+    void testDeepNesting() {
+        // f([(f([(...x...)])...)]), too deep to parse recursively
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            builder.append("f([(");
+        }
+        builder.append("x");
+        for (int i = 0; i < 100000; i++) {
+            builder.append(")])");
+        }
+        Ast.Expression expression = new Parser(new Lexer(builder.toString()).lex(), Parser.Mode.ITERATIVE).parseExpression();
+        for (int i = 0; i < 100000; i++) {
+            Ast.Expression.Function function = (Ast.Expression.Function) expression;
+            Ast.Expression.PlcList list = (Ast.Expression.PlcList) function.getArguments().get(0);
+            expression = ((Ast.Expression.Group) list.getValues().get(0)).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), expression);
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, List<Token> tokens, Ast.Expression.Access expected) {
@@ -6,12 +6,19 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -518,6 +525,150 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testGenerated() {
+        for (long seed = 0; seed < 20; seed++) {
+            String source = new ProgramGenerator(seed).generateSource();
+            test(new Lexer(source).lex(), new ProgramGenerator(seed).generate(), Parser::parseSource);
+        }
+    }
+
+    @Test
+    void testIterative() {
+        for (long seed = 0; seed < 20; seed++) {
+            List<Token> tokens = new Lexer(new ProgramGenerator(seed).setDepth(6).setNesting(4).generateSource()).lex();
+            Assertions.assertEquals(new Parser(tokens).parseSource(),
+                    new Parser(tokens, Parser.Mode.ITERATIVE).parseSource());
+        }
+    }
+
+    @Test
+    void testParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Parser.Mode mode : Parser.Mode.values()) {
+                for (long seed = 0; seed < 5; seed++) {
+                    List<Token> tokens = new Lexer(new ProgramGenerator(seed).setGlobals(200).setFunctions(200).generateSource()).lex();
+                    Assertions.assertEquals(new Parser(tokens, mode).parseSource(),
+                            new Parser(tokens, mode).parseSourceParallel(pool));
+                }
+                String input = new ProgramGenerator(0).setFunctions(200).generateSource() + "FUN f() DO x = ; END\n"
+                        + new ProgramGenerator(1).setFunctions(200).generateSource();
+                List<Token> tokens = new Lexer(input).lex();
+                ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens, mode).parseSource());
+                ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens, mode).parseSourceParallel(pool));
+                Assertions.assertEquals(expected.getMessage() + "@" + expected.getIndex(), actual.getMessage() + "@" + actual.getIndex());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testReparse() {
+        String source = new ProgramGenerator(0).setGlobals(20).setFunctions(20).generateSource();
+        List<Token> tokens = new Lexer(source).lex();
+        Ast.Source previous = new Parser(tokens).parseSource();
+        int function = source.indexOf("FUN ", source.indexOf("FUN ") + 1);
+        int body = source.indexOf(" DO", function) + 3;
+        testReparse(source, tokens, previous, body, 0, "\n    print(1);", 1);
+        testReparse(source, tokens, previous, function, 0, "VAL added: Integer = 1;\n", 0);
+        testReparse(source, tokens, previous, 0, source.indexOf("FUN "), "", 0);
+        Assertions.assertThrows(ParseException.class, () -> testReparse(source, tokens, previous, body, 0, "x = ;", 1));
+    }
+
+    /**
+     * Applies the edit to the source and checks that reparsing gives the same
+     * AST as parsing the edited source from scratch, keeping all but the given
+     * number of functions from the previous AST.
+     */
+    private static void testReparse(String source, List<Token> tokens, Ast.Source previous, int offset, int removed, String inserted, int changed) {
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        List<Token> relexed = new Lexer(edited).lex();
+        for (Parser.Mode mode : Parser.Mode.values()) {
+            Ast.Source expected;
+            try {
+                expected = new Parser(relexed, mode).parseSource();
+            } catch (ParseException e) {
+                ParseException actual = Assertions.assertThrows(ParseException.class,
+                        () -> new Parser(relexed, mode).reparse(previous, tokens, offset, removed, inserted.length()));
+                Assertions.assertEquals(e.getMessage() + "@" + e.getIndex(), actual.getMessage() + "@" + actual.getIndex());
+                throw e;
+            }
+            Ast.Source actual = new Parser(relexed, mode).reparse(previous, tokens, offset, removed, inserted.length());
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertEquals(previous.getFunctions().size() - changed,
+                    actual.getFunctions().stream().filter(f -> previous.getFunctions().stream().anyMatch(p -> p == f)).count());
+        }
+    }
+
+    @Test
+    void testStreaming() {
+        String source = new ProgramGenerator(0).setGlobals(50).setFunctions(50).generateSource();
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource();
+        for (Parser.Mode mode : Parser.Mode.values()) {
+            int[] pulled = {0};
+            Iterator<Token> lexer = new Lexer(new StringReader(source)).iterator();
+            Iterator<Ast> parser = new Parser(new Iterator<Token>() {
+                @Override
+                public boolean hasNext() {
+                    return lexer.hasNext();
+                }
+                @Override
+                public Token next() {
+                    pulled[0]++;
+                    return lexer.next();
+                }
+            }, mode).iterator();
+            Assertions.assertEquals(expected.getGlobals().get(0), parser.next());
+            Assertions.assertTrue(pulled[0] < 100, "Pulled " + pulled[0] + " tokens for the first global.");
+            List<Ast.Global> globals = new ArrayList<>(Arrays.asList(expected.getGlobals().get(0)));
+            List<Ast.Function> functions = new ArrayList<>();
+            parser.forEachRemaining(ast -> {
+                if (ast instanceof Ast.Function) {
+                    functions.add((Ast.Function) ast);
+                } else {
+                    globals.add((Ast.Global) ast);
+                }
+            });
+            Assertions.assertEquals(expected, new Ast.Source(globals, functions));
+        }
+    }
+
+    @Test
+    void testRecovery() {
+        String input = "VAR x: Integer = ;\n"
+                + "FUN f(): Integer DO\n"
+                + "    a = 1 b = 2;\n"
+                + "    print(a);\n"
+                + "    RETURN a;\n"
+                + "FUN g(): Integer DO RETURN 1; END";
+        for (Parser.Mode mode : Parser.Mode.values()) {
+            List<ParseException> errors = new ArrayList<>();
+            Ast.Source ast = new Parser(new Lexer(input).lex(), mode).parseSource(errors);
+            Assertions.assertEquals(Arrays.asList("Not A Primary Expression@17", "Missing semicolon@49", "No END@84"),
+                    errors.stream().map(e -> e.getMessage() + "@" + e.getIndex()).collect(Collectors.toList()));
+            Assertions.assertEquals(Arrays.asList(), ast.getGlobals());
+            Assertions.assertEquals(Arrays.asList(
+                    new Ast.Statement.Error("Missing semicolon", 49),
+                    new Ast.Statement.Expression(new Ast.Expression.Function("print",
+                            Arrays.asList(new Ast.Expression.Access(Optional.empty(), "a")))),
+                    new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "a"))
+            ), ast.getFunctions().get(0).getStatements());
+            Assertions.assertEquals("g", ast.getFunctions().get(1).getName());
+            // recovered trees are rejected by every later stage
+            Ast.Function function = ast.getFunctions().get(0);
+            Assertions.assertEquals("Cannot analyze a syntax error: Missing semicolon.", Assertions.assertThrows(RuntimeException.class,
+                    () -> new Analyzer(new Scope(null)).visit(function)).getMessage());
+            Assertions.assertEquals("Cannot print a syntax error: Missing semicolon.", Assertions.assertThrows(RuntimeException.class,
+                    () -> new SourcePrinter(new PrintWriter(new StringWriter())).visit(function)).getMessage());
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            interpreter.visit(function);
+            Assertions.assertEquals("Cannot execute a syntax error: Missing semicolon.", Assertions.assertThrows(RuntimeException.class,
+                    () -> interpreter.getScope().lookupFunction("f", 0).invoke(Arrays.asList())).getMessage());
+        }
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).